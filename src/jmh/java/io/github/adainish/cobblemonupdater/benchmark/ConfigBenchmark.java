@@ -0,0 +1,48 @@
+package io.github.adainish.cobblemonupdater.benchmark;
+
+import io.github.adainish.cobblemonupdater.Cobblemonupdater;
+import io.github.adainish.cobblemonupdater.config.Config;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Time to load config.json, as done on every start and reload
+ *
+ * @Author Adainish
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConfigBenchmark
+{
+    private File dir;
+
+    @Setup
+    public void setup() throws IOException {
+        this.dir = Files.createTempDirectory("cobblemonupdater-bench").toFile();
+        Cobblemonupdater.setConfigDir(this.dir);
+        Config.writeConfig();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(this.dir.toPath())) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public Config getConfig() {
+        return Config.getConfig();
+    }
+}
@@ -0,0 +1,31 @@
+package io.github.adainish.cobblemonupdater.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Loads the recorded listing pages bundled with the benchmarks
+ *
+ * @Author Adainish
+ */
+final class Fixtures
+{
+    static final String RELEASES_LISTING = "releases-listing.html";
+    static final String SNAPSHOTS_LISTING = "snapshots-listing.html";
+    static final String VERSION_DIRECTORY = "version-directory.html";
+
+    private Fixtures() {
+    }
+
+    static String load(String name) {
+        try (InputStream in = Fixtures.class.getResourceAsStream("/fixtures/" + name)) {
+            if (in == null)
+                throw new IllegalStateException("Missing benchmark fixture " + name);
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
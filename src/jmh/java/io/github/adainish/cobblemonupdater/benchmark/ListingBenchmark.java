@@ -0,0 +1,78 @@
+package io.github.adainish.cobblemonupdater.benchmark;
+
+import io.github.adainish.cobblemonupdater.api.http.HrefExtractor;
+import io.github.adainish.cobblemonupdater.api.update.ArtefactCrawler;
+import io.github.adainish.cobblemonupdater.api.update.JarIndex;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Listing and href parsing over the recorded artefacts pages
+ *
+ * @Author Adainish
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ListingBenchmark
+{
+    private static final String LIST_URL = "https://artefacts.cobblemon.com/releases/com/cobblemon/fabric/";
+
+    private String releases;
+    private String snapshots;
+    private String directory;
+    private Map<String, String> pages;
+
+    @Setup
+    public void setup() {
+        this.releases = Fixtures.load(Fixtures.RELEASES_LISTING);
+        this.snapshots = Fixtures.load(Fixtures.SNAPSHOTS_LISTING);
+        this.directory = Fixtures.load(Fixtures.VERSION_DIRECTORY);
+        // Every version directory serves the recorded directory page, renamed to its own version
+        this.pages = new HashMap<>();
+        this.pages.put(LIST_URL, this.releases);
+        for (String dir : ArtefactCrawler.versionDirectories(this.releases))
+            this.pages.put(LIST_URL + dir + "/", this.directory.replace("1.6.1+1.21.1", dir));
+    }
+
+    @Benchmark
+    public List<String> extractAllHrefs() {
+        return HrefExtractor.extractAll(this.releases);
+    }
+
+    @Benchmark
+    public String findFirstJarStreaming() throws IOException {
+        return HrefExtractor.findFirst(new StringReader(this.directory), href -> href.endsWith(".jar"));
+    }
+
+    @Benchmark
+    public List<String> releaseVersionDirectories() {
+        return ArtefactCrawler.versionDirectories(this.releases);
+    }
+
+    @Benchmark
+    public List<String> snapshotVersionDirectories() {
+        return ArtefactCrawler.versionDirectories(this.snapshots);
+    }
+
+    @Benchmark
+    public JarIndex crawlRecordedListing() throws IOException {
+        return new ArtefactCrawler(this::fetch, 4).crawl(LIST_URL, "1.21.1");
+    }
+
+    private String fetch(String url) throws IOException {
+        String page = this.pages.get(url);
+        if (page == null)
+            throw new IOException("No recorded page for " + url);
+        return page;
+    }
+}
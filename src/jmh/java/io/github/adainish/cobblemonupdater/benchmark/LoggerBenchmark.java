@@ -0,0 +1,74 @@
+package io.github.adainish.cobblemonupdater.benchmark;
+
+import io.github.adainish.cobblemonupdater.api.LogLevel;
+import io.github.adainish.cobblemonupdater.api.Logger;
+import io.github.adainish.cobblemonupdater.config.Config;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Logger throughput with one and with several threads logging at the same time.
+ * Console output is discarded, but still goes through the synchronized PrintStream like on a server.
+ * The log file goes to a temporary directory that is removed afterwards.
+ *
+ * @Author Adainish
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoggerBenchmark
+{
+    private PrintStream originalOut;
+    private Path logDir;
+
+    @Setup
+    public void setup() throws IOException {
+        this.originalOut = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        this.logDir = Files.createTempDirectory("cobblemonupdater-bench");
+        Config config = new Config();
+        config.logFile = this.logDir.resolve("application.log").toString();
+        config.logLevel = LogLevel.INFO.name();
+        Logger.configure(config);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Logger.shutdown();
+        System.setOut(this.originalOut);
+        // Rotated logs end up next to the log file, so the whole directory goes
+        try (Stream<Path> files = Files.walk(this.logDir)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList())
+                Files.deleteIfExists(file);
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public boolean logSingleThread() {
+        return Logger.log("Checking directory: https://artefacts.cobblemon.com/releases/com/cobblemon/fabric/1.6.1+1.21.1/");
+    }
+
+    @Benchmark
+    @Threads(8)
+    public boolean logContended() {
+        return Logger.log("Checking directory: https://artefacts.cobblemon.com/releases/com/cobblemon/fabric/1.6.1+1.21.1/");
+    }
+
+    @Benchmark
+    @Threads(8)
+    public boolean debugDisabledContended() {
+        return Logger.debug(() -> "Matched jar: " + System.nanoTime());
+    }
+}
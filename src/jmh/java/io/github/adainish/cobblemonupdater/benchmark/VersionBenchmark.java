@@ -0,0 +1,82 @@
+package io.github.adainish.cobblemonupdater.benchmark;
+
+import io.github.adainish.cobblemonupdater.api.discord.DiscordBot;
+import io.github.adainish.cobblemonupdater.api.update.ArtefactCrawler;
+import io.github.adainish.cobblemonupdater.api.update.CobblemonVersion;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Version comparison over the version directories of the recorded releases listing.
+ * The string splitting comparator the updater used before is kept as a baseline.
+ *
+ * @Author Adainish
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class VersionBenchmark
+{
+    private List<String> versions;
+
+    @Setup
+    public void setup() {
+        this.versions = new ArrayList<>();
+        for (String dir : ArtefactCrawler.versionDirectories(Fixtures.load(Fixtures.RELEASES_LISTING))) {
+            int plusIndex = dir.indexOf('+');
+            this.versions.add(plusIndex > 0 ? dir.substring(0, plusIndex) : dir);
+        }
+    }
+
+    @Benchmark
+    public List<String> sortCompareVersions() {
+        List<String> sorted = new ArrayList<>(this.versions);
+        sorted.sort(DiscordBot::compareVersions);
+        return sorted;
+    }
+
+    @Benchmark
+    public List<String> sortLegacySplit() {
+        List<String> sorted = new ArrayList<>(this.versions);
+        sorted.sort(VersionBenchmark::legacyCompareVersions);
+        return sorted;
+    }
+
+    @Benchmark
+    public void parseUncached(Blackhole blackhole) {
+        for (String version : this.versions)
+            blackhole.consume(CobblemonVersion.parse(version));
+    }
+
+    @Benchmark
+    public String highestVersion() {
+        String highest = null;
+        for (String version : this.versions) {
+            if (highest == null || DiscordBot.compareVersions(version, highest) > 0)
+                highest = version;
+        }
+        return highest;
+    }
+
+    /**
+     * The comparator from before versions were parsed once
+     */
+    private static int legacyCompareVersions(String v1, String v2) {
+        String[] a1 = v1.split("\\.");
+        String[] a2 = v2.split("\\.");
+        int len = Math.max(a1.length, a2.length);
+        for (int i = 0; i < len; i++) {
+            int n1 = i < a1.length ? Integer.parseInt(a1[i].replaceAll("\\D.*", "")) : 0;
+            int n2 = i < a2.length ? Integer.parseInt(a2[i].replaceAll("\\D.*", "")) : 0;
+            if (n1 != n2) return Integer.compare(n1, n2);
+        }
+        return 0;
+    }
+}
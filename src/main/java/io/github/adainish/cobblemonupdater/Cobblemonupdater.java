@@ -2,13 +2,23 @@ package io.github.adainish.cobblemonupdater;
 
 import io.github.adainish.cobblemonupdater.api.discord.DiscordBot;
 import io.github.adainish.cobblemonupdater.api.Logger;
+import io.github.adainish.cobblemonupdater.api.http.HttpCache;
+import io.github.adainish.cobblemonupdater.api.http.HttpService;
+import io.github.adainish.cobblemonupdater.api.metrics.MetricsServer;
+import io.github.adainish.cobblemonupdater.api.server.RestartScheduler;
+import io.github.adainish.cobblemonupdater.api.server.TickSampler;
+import io.github.adainish.cobblemonupdater.api.update.ArtifactStore;
+import io.github.adainish.cobblemonupdater.api.update.JarSwapper;
 import io.github.adainish.cobblemonupdater.config.Config;
 import net.fabricmc.api.ModInitializer;
 import net.fabricmc.fabric.api.event.lifecycle.v1.ServerLifecycleEvents;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerTickEvents;
 import net.fabricmc.loader.api.FabricLoader;
 import net.minecraft.server.MinecraftServer;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Paths;
 
 public class Cobblemonupdater implements ModInitializer {
     public static Cobblemonupdater instance;
@@ -18,6 +28,13 @@ public class Cobblemonupdater implements ModInitializer {
     public static String token;
     public static DiscordBot bot;
     public static Config config;
+    public static HttpService httpService;
+    public static HttpCache httpCache;
+    public static ArtifactStore artifactStore;
+    public static JarSwapper jarSwapper;
+    public static RestartScheduler restartScheduler;
+    public static TickSampler tickSampler;
+    public static MetricsServer metricsServer;
     public static File getConfigDir() {
         return configDir;
     }
@@ -28,6 +45,10 @@ public class Cobblemonupdater implements ModInitializer {
     @Override
     public void onInitialize() {
         instance = this;
+        // Settle an interrupted jar swap before the server loads the world
+        initDirs();
+        jarSwapper = new JarSwapper(Paths.get("mods"), getConfigDir(), new Config().retainedCobblemonJars);
+        jarSwapper.recover();
 
         //set the server variable when the server starts
         ServerLifecycleEvents.SERVER_STARTED.register(server -> {
@@ -36,8 +57,31 @@ public class Cobblemonupdater implements ModInitializer {
             load();
         }
         );
+        ServerTickEvents.START_SERVER_TICK.register(server -> {
+            if (tickSampler != null)
+                tickSampler.onStartTick();
+        });
+        ServerTickEvents.END_SERVER_TICK.register(server -> {
+            if (tickSampler != null)
+                tickSampler.onEndTick(server);
+        });
+        ServerLifecycleEvents.SERVER_STOPPING.register(server -> {
+            if (tickSampler != null && bot != null) {
+                try {
+                    tickSampler.saveBaseline(bot.getCurrentCobblemonVersion());
+                } catch (RuntimeException e) {
+                    Logger.log(e);
+                }
+            }
+        });
         ServerLifecycleEvents.SERVER_STOPPED.register(server -> {
+            if (restartScheduler != null)
+                restartScheduler.shutdown();
+            stopMetricsServer();
             logoutBot();
+            if (httpCache != null)
+                httpCache.flush();
+            Logger.shutdown();
         });
     }
 
@@ -45,6 +89,8 @@ public class Cobblemonupdater implements ModInitializer {
     {
         initDirs();
         initConfigs();
+        if (tickSampler == null)
+            tickSampler = new TickSampler(getConfigDir());
         if (!loginBot())
         {
             Logger.log("Failed to login to bot, please check your token in the config file");
@@ -100,6 +146,67 @@ public class Cobblemonupdater implements ModInitializer {
     public void initConfigs() {
         Config.writeConfig();
         config = Config.getConfig();
+        Logger.configure(config);
+        initHttpService();
+        initHttpCache();
+        initArtifactStore();
+        initJarSwapper();
+        initRestartScheduler();
+        initMetricsServer();
+    }
+
+    public void initHttpService() {
+        if (httpService == null)
+            httpService = new HttpService(config);
+        else httpService.configure(config);
+    }
+
+    public void initHttpCache() {
+        long ttlMillis = config.httpCacheTtlSeconds * 1000L;
+        if (httpCache == null)
+            httpCache = HttpCache.load(getConfigDir(), ttlMillis, httpService);
+        else httpCache.setTtlMillis(ttlMillis);
+        httpCache.setMaxStaleMillis(config.httpCacheMaxStaleMinutes * 60_000L);
+    }
+
+    public void initArtifactStore() {
+        long maxBytes = config.artifactStoreMaxMB * 1024L * 1024L;
+        if (artifactStore == null)
+            artifactStore = ArtifactStore.load(new File(getConfigDir(), "artifacts"), maxBytes);
+        else artifactStore.setMaxBytes(maxBytes);
+    }
+
+    public void initJarSwapper() {
+        if (jarSwapper == null)
+            jarSwapper = new JarSwapper(Paths.get("mods"), getConfigDir(), config.retainedCobblemonJars);
+        else jarSwapper.setRetainedJars(config.retainedCobblemonJars);
+    }
+
+    public void initRestartScheduler() {
+        if (restartScheduler == null)
+            restartScheduler = new RestartScheduler(config);
+        else restartScheduler.configure(config);
+    }
+
+    public void initMetricsServer() {
+        String address = config.metricsBindAddress + ":" + config.metricsPort;
+        if (metricsServer != null && config.metricsEnabled && metricsServer.getAddress().equals(address))
+            return;
+        stopMetricsServer();
+        if (!config.metricsEnabled)
+            return;
+        try {
+            metricsServer = MetricsServer.start(config.metricsBindAddress, config.metricsPort);
+        } catch (IOException e) {
+            Logger.warn("Failed to start the metrics endpoint on " + address + ": " + e.getMessage());
+        }
+    }
+
+    public static void stopMetricsServer() {
+        if (metricsServer != null) {
+            metricsServer.stop();
+            metricsServer = null;
+        }
     }
 
 }
@@ -0,0 +1,31 @@
+package io.github.adainish.cobblemonupdater.api;
+
+/**
+ * Severity of a log message, ordered from most to least verbose
+ *
+ * @Author Adainish
+ */
+public enum LogLevel
+{
+    TRACE,
+    DEBUG,
+    INFO,
+    WARN,
+    ERROR;
+
+    /**
+     * Parse a level from the config, falling back when it is unknown
+     * @param name Name of the level, case insensitive
+     * @param fallback Level to use when the name is not valid
+     * @return The parsed level
+     */
+    public static LogLevel fromString(String name, LogLevel fallback) {
+        if (name == null)
+            return fallback;
+        try {
+            return LogLevel.valueOf(name.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return fallback;
+        }
+    }
+}
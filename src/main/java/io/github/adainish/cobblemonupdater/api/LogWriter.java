@@ -0,0 +1,306 @@
+package io.github.adainish.cobblemonupdater.api;
+
+import io.github.adainish.cobblemonupdater.api.metrics.Counter;
+import io.github.adainish.cobblemonupdater.api.metrics.Metrics;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Background appender for the application log.
+ * Callers only enqueue lines, a single writer thread drains the queue in batches
+ * into one open FileChannel and takes care of size and age based rotation.
+ *
+ * @Author Adainish
+ */
+public class LogWriter
+{
+    /**
+     * What to do with a new line when the queue is full
+     */
+    public enum OverflowPolicy
+    {
+        /**
+         * Wait until the writer has made room
+         */
+        BLOCK,
+        /**
+         * Discard the line that is being logged
+         */
+        DROP_NEWEST,
+        /**
+         * Discard the oldest queued line to make room
+         */
+        DROP_OLDEST
+    }
+
+    private static final Counter DROPPED = Metrics.counter("cobblemonupdater_log_dropped_total",
+            "Log lines discarded because the log queue was full");
+    private static final int MAX_BATCH = 512;
+    private static final DateTimeFormatter ROTATION_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+    /**
+     * Compared by identity, tells the writer thread to flush and exit
+     */
+    private static final String STOP = new String("STOP");
+
+    private final Path file;
+    private final BlockingQueue<String> queue;
+    private final OverflowPolicy overflowPolicy;
+    private final long maxFileBytes;
+    private final long maxAgeMillis;
+    private final int retainedFiles;
+    private final AtomicLong dropped = new AtomicLong();
+    private final Thread thread;
+    private final List<String> batch = new ArrayList<>(MAX_BATCH);
+    private ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+    private FileChannel channel;
+    private long fileSize;
+    private long openedAt;
+    private volatile boolean closed = false;
+
+    /**
+     * Create and start a writer
+     * @param file The log file to append to
+     * @param capacity Maximum amount of queued lines
+     * @param overflowPolicy What to do when the queue is full
+     * @param maxFileBytes Rotate once the file grows past this size, 0 to disable
+     * @param maxAgeMillis Rotate once the file is older than this, 0 to disable
+     * @param retainedFiles Amount of gzipped rotated files to keep
+     */
+    public LogWriter(Path file, int capacity, OverflowPolicy overflowPolicy, long maxFileBytes, long maxAgeMillis, int retainedFiles) {
+        this.file = file;
+        this.queue = new ArrayBlockingQueue<>(Math.max(16, capacity));
+        this.overflowPolicy = overflowPolicy == null ? OverflowPolicy.BLOCK : overflowPolicy;
+        this.maxFileBytes = maxFileBytes;
+        this.maxAgeMillis = maxAgeMillis;
+        this.retainedFiles = retainedFiles;
+        this.thread = new Thread(this::run, "CobblemonUpdater-LogWriter");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Queue a line for writing
+     * @param line The line to write, without a line separator
+     * @return Whether the line was accepted
+     */
+    public boolean submit(String line) {
+        if (closed)
+            return false;
+        switch (overflowPolicy) {
+            case DROP_NEWEST -> {
+                if (!queue.offer(line)) {
+                    dropped.incrementAndGet();
+                    DROPPED.inc();
+                    return false;
+                }
+            }
+            case DROP_OLDEST -> {
+                while (!queue.offer(line)) {
+                    if (queue.poll() != null) {
+                        dropped.incrementAndGet();
+                        DROPPED.inc();
+                    }
+                }
+            }
+            default -> {
+                try {
+                    queue.put(line);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return The amount of lines discarded because the queue was full
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * @return The amount of lines waiting to be written
+     */
+    public int getQueued() {
+        return queue.size();
+    }
+
+    /**
+     * Flush everything that is queued and stop the writer thread
+     * @param timeoutMillis How long to wait for the writer to finish
+     */
+    public void close(long timeoutMillis) {
+        if (closed)
+            return;
+        closed = true;
+        try {
+            // The queue might be full, don't let the stop signal get lost
+            if (!queue.offer(STOP, timeoutMillis, TimeUnit.MILLISECONDS))
+                thread.interrupt();
+            thread.join(timeoutMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        boolean stop = false;
+        while (!stop) {
+            try {
+                batch.add(queue.take());
+                queue.drainTo(batch, MAX_BATCH - 1);
+            } catch (InterruptedException e) {
+                queue.drainTo(batch);
+                stop = true;
+            }
+            // Remove the stop signal by identity, a regular "STOP" line has to be written
+            for (int i = batch.size() - 1; i >= 0; i--) {
+                if (batch.get(i) == STOP) {
+                    batch.remove(i);
+                    stop = true;
+                }
+            }
+            write(batch);
+            batch.clear();
+        }
+        closeChannel();
+    }
+
+    private void write(List<String> lines) {
+        long lost = dropped.getAndSet(0);
+        if (lines.isEmpty() && lost == 0)
+            return;
+        buffer.clear();
+        if (lost > 0)
+            append(Logger.getTimestamp() + " - " + lost + " log lines were dropped because the log queue was full");
+        for (String line : lines) {
+            append(line);
+        }
+        buffer.flip();
+        try {
+            rotateIfNeeded(buffer.remaining());
+            if (channel == null)
+                openChannel();
+            while (buffer.hasRemaining()) {
+                fileSize += channel.write(buffer);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            closeChannel();
+        }
+    }
+
+    private void append(String line) {
+        byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+        int needed = bytes.length + LINE_SEPARATOR.length;
+        if (buffer.remaining() < needed) {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + needed));
+            buffer.flip();
+            larger.put(buffer);
+            buffer = larger;
+        }
+        buffer.put(bytes);
+        buffer.put(LINE_SEPARATOR);
+    }
+
+    private void openChannel() throws IOException {
+        Files.createDirectories(file.getParent());
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        fileSize = channel.size();
+        openedAt = System.currentTimeMillis();
+        try {
+            openedAt = Math.min(openedAt, Files.readAttributes(file, BasicFileAttributes.class).creationTime().toMillis());
+        } catch (IOException ignored) {
+            // Fall back to the time the channel was opened
+        }
+    }
+
+    private void closeChannel() {
+        if (channel == null)
+            return;
+        try {
+            channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        channel = null;
+    }
+
+    private void rotateIfNeeded(int incoming) throws IOException {
+        if (channel == null && Files.exists(file))
+            openChannel();
+        if (channel == null || fileSize == 0)
+            return;
+        boolean tooLarge = maxFileBytes > 0 && fileSize + incoming > maxFileBytes;
+        boolean tooOld = maxAgeMillis > 0 && System.currentTimeMillis() - openedAt > maxAgeMillis;
+        if (!tooLarge && !tooOld)
+            return;
+        closeChannel();
+        String baseName = stripExtension(file.getFileName().toString());
+        String stamp = baseName + "-" + LocalDateTime.now().format(ROTATION_FORMAT);
+        Path rotated = file.resolveSibling(stamp + ".log");
+        Path gzipped = file.resolveSibling(stamp + ".log.gz");
+        // Several rotations within one second must not overwrite each other
+        for (int i = 1; Files.exists(rotated) || Files.exists(gzipped); i++) {
+            rotated = file.resolveSibling(stamp + "-" + i + ".log");
+            gzipped = file.resolveSibling(stamp + "-" + i + ".log.gz");
+        }
+        Files.move(file, rotated);
+        try (InputStream in = Files.newInputStream(rotated);
+             OutputStream out = new GZIPOutputStream(Files.newOutputStream(gzipped), 64 * 1024)) {
+            in.transferTo(out);
+        }
+        Files.delete(rotated);
+        pruneRotated(baseName);
+    }
+
+    private void pruneRotated(String baseName) throws IOException {
+        List<Path> rotated = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(file.getParent(), baseName + "-*.log.gz")) {
+            for (Path path : stream) {
+                rotated.add(path);
+            }
+        }
+        rotated.sort(Comparator.comparingLong(LogWriter::lastModified).thenComparing(Comparator.naturalOrder()));
+        for (int i = 0; i < rotated.size() - Math.max(0, retainedFiles); i++) {
+            Files.deleteIfExists(rotated.get(i));
+        }
+    }
+
+    private static long lastModified(Path path) {
+        try {
+            return Files.getLastModifiedTime(path).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static String stripExtension(String name) {
+        int dot = name.lastIndexOf('.');
+        return dot > 0 ? name.substring(0, dot) : name;
+    }
+}
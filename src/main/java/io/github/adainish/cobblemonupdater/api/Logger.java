@@ -1,52 +1,170 @@
 package io.github.adainish.cobblemonupdater.api;
 
-import java.io.IOException;
+import io.github.adainish.cobblemonupdater.api.metrics.Counter;
+import io.github.adainish.cobblemonupdater.api.metrics.Metrics;
+import io.github.adainish.cobblemonupdater.config.Config;
+
 import java.io.PrintWriter;
 import java.io.StringWriter;
-import java.nio.file.Files;
-import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.StandardOpenOption;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.function.Supplier;
 
 public class Logger
 {
     private static final String LOG_FILE_PATH = "config/CobblemonUpdater/application.log";
+    private static final DateTimeFormatter TIMESTAMP_FORMAT = DateTimeFormatter.ofPattern("yyyy/MM/dd HH:mm:ss");
+    private static final long CLOSE_TIMEOUT_MILLIS = 5000;
+
+    private static final Counter MESSAGES = Metrics.counter("cobblemonupdater_log_messages_total",
+            "Log messages written, by level", "level");
+    private static final Counter.Child[] MESSAGES_BY_LEVEL = new Counter.Child[LogLevel.values().length];
+
+    private static volatile LogWriter writer = createWriter(new Config());
+    private static volatile LogLevel level = LogLevel.INFO;
+
+    static {
+        for (LogLevel logLevel : LogLevel.values())
+            MESSAGES_BY_LEVEL[logLevel.ordinal()] = MESSAGES.labels(logLevel.name().toLowerCase());
+        Metrics.gauge("cobblemonupdater_log_queue_depth", "Log lines waiting to be written")
+                .setSupplier(() -> writer.getQueued());
+        Runtime.getRuntime().addShutdownHook(new Thread(Logger::shutdown, "CobblemonUpdater-LogShutdown"));
+    }
 
     public static boolean log(String message) {
-        String timestampedMessage = getTimestamp() + " - " + message;
-        System.out.println(timestampedMessage);
-        return appendToFile(LOG_FILE_PATH, timestampedMessage);
+        return log(LogLevel.INFO, message);
     }
 
     public static boolean log(Exception e) {
+        if (!isEnabled(LogLevel.ERROR))
+            return false;
         StringWriter sw = new StringWriter();
         e.printStackTrace(new PrintWriter(sw));
-        return log(sw.toString());
+        return log(LogLevel.ERROR, sw.toString());
     }
 
-    private static String getTimestamp() {
-        DateTimeFormatter dtf = DateTimeFormatter.ofPattern("yyyy/MM/dd HH:mm:ss");
-        LocalDateTime now = LocalDateTime.now();
-        return dtf.format(now);
+    /**
+     * Log a message if the level is enabled
+     * @param messageLevel Level of the message
+     * @param message The message
+     * @return Whether the message was written
+     */
+    public static boolean log(LogLevel messageLevel, String message) {
+        if (!isEnabled(messageLevel))
+            return false;
+        MESSAGES_BY_LEVEL[messageLevel.ordinal()].inc();
+        String timestampedMessage = getTimestamp() + " - [" + messageLevel + "] " + message;
+        System.out.println(timestampedMessage);
+        return writer.submit(timestampedMessage);
     }
 
-    private static boolean appendToFile(String filePath, String text) {
-        try {
-            Path path = Paths.get(filePath);
-            // Check if the directory exists
-            if (!Files.exists(path.getParent())) {
-                // If not, create the directory
-                Files.createDirectories(path.getParent());
-            }
-            // Now write to the file
-            Files.write(Paths.get(filePath), (text + System.lineSeparator()).getBytes(), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
-        } catch (IOException e) {
-            e.printStackTrace();
+    /**
+     * Log a message if the level is enabled, the message is only built when it will be written
+     * @param messageLevel Level of the message
+     * @param message Supplier of the message
+     * @return Whether the message was written
+     */
+    public static boolean log(LogLevel messageLevel, Supplier<String> message) {
+        if (!isEnabled(messageLevel))
             return false;
+        return log(messageLevel, message.get());
+    }
+
+    public static boolean trace(String message) {
+        return log(LogLevel.TRACE, message);
+    }
+
+    public static boolean trace(Supplier<String> message) {
+        return log(LogLevel.TRACE, message);
+    }
+
+    public static boolean debug(String message) {
+        return log(LogLevel.DEBUG, message);
+    }
+
+    public static boolean debug(Supplier<String> message) {
+        return log(LogLevel.DEBUG, message);
+    }
+
+    public static boolean info(String message) {
+        return log(LogLevel.INFO, message);
+    }
+
+    public static boolean info(Supplier<String> message) {
+        return log(LogLevel.INFO, message);
+    }
+
+    public static boolean warn(String message) {
+        return log(LogLevel.WARN, message);
+    }
+
+    public static boolean warn(Supplier<String> message) {
+        return log(LogLevel.WARN, message);
+    }
+
+    public static boolean error(String message) {
+        return log(LogLevel.ERROR, message);
+    }
+
+    public static boolean error(Supplier<String> message) {
+        return log(LogLevel.ERROR, message);
+    }
+
+    /**
+     * @param messageLevel Level to check
+     * @return Whether messages of this level are written
+     */
+    public static boolean isEnabled(LogLevel messageLevel) {
+        return messageLevel.compareTo(level) >= 0;
+    }
+
+    public static LogLevel getLevel() {
+        return level;
+    }
+
+    public static void setLevel(LogLevel newLevel) {
+        if (newLevel != null)
+            level = newLevel;
+    }
+
+    /**
+     * Apply the logging settings from the config, replacing the current writer
+     * @param config The loaded config
+     */
+    public static void configure(Config config) {
+        if (config == null)
+            return;
+        setLevel(LogLevel.fromString(config.logLevel, LogLevel.INFO));
+        LogWriter previous = writer;
+        writer = createWriter(config);
+        previous.close(CLOSE_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Flush all queued lines to disk and stop the writer thread
+     */
+    public static void shutdown() {
+        writer.close(CLOSE_TIMEOUT_MILLIS);
+    }
+
+    private static LogWriter createWriter(Config config) {
+        LogWriter.OverflowPolicy policy;
+        try {
+            policy = LogWriter.OverflowPolicy.valueOf(config.logOverflowPolicy.toUpperCase());
+        } catch (Exception e) {
+            policy = LogWriter.OverflowPolicy.BLOCK;
         }
+        String logFile = config.logFile == null || config.logFile.isEmpty() ? LOG_FILE_PATH : config.logFile;
+        return new LogWriter(Paths.get(logFile),
+                config.logQueueCapacity,
+                policy,
+                config.logMaxFileSizeMB * 1024L * 1024L,
+                config.logMaxAgeHours * 60L * 60L * 1000L,
+                config.logRetainedFiles);
+    }
 
-        return true;
+    static String getTimestamp() {
+        return TIMESTAMP_FORMAT.format(LocalDateTime.now());
     }
 }
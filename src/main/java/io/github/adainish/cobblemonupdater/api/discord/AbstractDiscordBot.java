@@ -5,13 +5,17 @@ import io.github.adainish.cobblemonupdater.api.Logger;
 import net.dv8tion.jda.api.*;
 import net.dv8tion.jda.api.entities.Activity;
 import net.dv8tion.jda.api.entities.Guild;
-import net.dv8tion.jda.api.entities.channel.concrete.TextChannel;
+import net.dv8tion.jda.api.entities.Message;
+import net.dv8tion.jda.api.entities.MessageEmbed;
+import net.dv8tion.jda.api.entities.channel.concrete.PrivateChannel;
+import net.dv8tion.jda.api.entities.channel.middleman.MessageChannel;
 import net.dv8tion.jda.api.entities.emoji.CustomEmoji;
 import net.dv8tion.jda.api.hooks.ListenerAdapter;
 
 import java.awt.*;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Abstract class for a Discord bot
@@ -36,6 +40,17 @@ public abstract class AbstractDiscordBot extends ListenerAdapter implements IDis
      * Server ID
      */
     private String serverID;
+    /**
+     * Batches embeds per channel
+     */
+    private final OutboundDispatcher dispatcher = new OutboundDispatcher(this::getMessageChannel,
+            Cobblemonupdater.config != null ? Cobblemonupdater.config.discordCoalesceMillis : 1000);
+    /**
+     * DM channels of the users the bot messaged
+     */
+    private final PrivateChannelCache privateChannels = new PrivateChannelCache(
+            Cobblemonupdater.config != null ? Cobblemonupdater.config.dmChannelCacheSize : 256,
+            (Cobblemonupdater.config != null ? Cobblemonupdater.config.dmChannelCacheMinutes : 60) * 60_000L);
 
     @Override
     public String getDefaultChannel() {
@@ -168,6 +183,9 @@ public abstract class AbstractDiscordBot extends ListenerAdapter implements IDis
         if (jda == null)
             return;
         Logger.log("Stopping discord bot...");
+        long drainMillis = (Cobblemonupdater.config != null ? Cobblemonupdater.config.discordDrainTimeoutSeconds : 5) * 1000L;
+        if (!dispatcher.drain(drainMillis))
+            Logger.warn("Not every queued Discord message was delivered before the bot stopped");
         List<Object> list = new ArrayList<>(jda.getRegisteredListeners());
         list.forEach(listener -> {
             jda.removeEventListener(listener);
@@ -243,9 +261,7 @@ public abstract class AbstractDiscordBot extends ListenerAdapter implements IDis
             return;
         }
 
-        TextChannel textChannel = guild.getTextChannelById(channel);
-
-        if (textChannel == null) {
+        if (guild.getTextChannelById(channel) == null) {
             Logger.log("A channel returned as non existent while attempting to send out a message");
             return;
         }
@@ -257,16 +273,31 @@ public abstract class AbstractDiscordBot extends ListenerAdapter implements IDis
         if (message != null && !message.isEmpty())
             embed.setDescription(message);
         embed.setColor(color);
-        try {
-            textChannel.sendMessageEmbeds(embed.build()).submit();
-        } catch (Exception e)
-        {
-            Logger.log("Failed to send message...");
-        }
+        dispatcher.send(channel, embed.build());
     }
 
     /**
-     * Get a custom emoji by name, if it exists
+     * Queue an embed for a channel, embeds queued close together are sent in one message
+     * @param channel Channel to send the embed to
+     * @param embed The embed
+     * @return Future completed once the embed was delivered, failed if it could not be
+     */
+    public CompletableFuture<Void> sendEmbed(String channel, MessageEmbed embed) {
+        return dispatcher.send(channel, embed);
+    }
+
+    public OutboundDispatcher getDispatcher() {
+        return this.dispatcher;
+    }
+
+    private MessageChannel getMessageChannel(String channel) {
+        Guild guild = getGuild();
+        return guild != null ? guild.getTextChannelById(channel) : null;
+    }
+
+    /**
+     * Get a custom emoji by name, if it exists.
+     * Emojis are only cached when the bot is built without the lean profile.
      * @param name Name of the emoji
      * @return CustomEmoji
      */
@@ -295,14 +326,37 @@ public abstract class AbstractDiscordBot extends ListenerAdapter implements IDis
             return;
         }
 
-        this.jda.retrieveUserById(userId).queue(user -> {
-            user.openPrivateChannel().queue(privateChannel -> {
-                privateChannel.sendMessage(message).queue();
-            }, failure -> {
-                Logger.log("Failed to open private channel with user ID: " + userId);
-            });
-        }, failure -> {
-            Logger.log("Failed to retrieve user with ID: " + userId);
+        submitDiscordDM(userId, message).exceptionally(failure -> {
+            Logger.log("Failed to send a direct message to user ID: " + userId);
+            return null;
         });
     }
+
+    /**
+     * Get the DM channel of a user, cached so messages in a row only cost one request each
+     * @param userId ID of the user
+     * @return Future completed with the channel
+     */
+    @Override
+    public CompletableFuture<PrivateChannel> openPrivateChannel(long userId) {
+        if (this.jda == null)
+            return CompletableFuture.failedFuture(new IllegalStateException("JDA is not initialized."));
+        return privateChannels.open(this.jda, userId);
+    }
+
+    /**
+     * Send a direct message to a user and keep hold of it, so it can be edited later
+     * @param userId ID of the user
+     * @param message Message to send
+     * @return Future completed with the sent message
+     */
+    public CompletableFuture<Message> submitDiscordDM(long userId, String message) {
+        return openPrivateChannel(userId)
+                .thenCompose(privateChannel -> privateChannel.sendMessage(message).submit())
+                .whenComplete((sent, failure) -> {
+                    // The user may have closed their DMs or the channel is gone, open it again next time
+                    if (failure != null)
+                        privateChannels.invalidate(userId);
+                });
+    }
 }
@@ -2,14 +2,15 @@ package io.github.adainish.cobblemonupdater.api.discord;
 
 import io.github.adainish.cobblemonupdater.api.Logger;
 import net.dv8tion.jda.api.entities.Guild;
-import net.dv8tion.jda.api.entities.Member;
 import net.dv8tion.jda.api.entities.Role;
+import net.dv8tion.jda.api.entities.User;
 import net.dv8tion.jda.api.entities.UserSnowflake;
 import net.dv8tion.jda.api.exceptions.HierarchyException;
 
 import java.util.Arrays;
 import java.util.Objects;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -43,29 +44,43 @@ public abstract class AbstractDiscordUser implements IDiscordUser {
         return this.discordID;
     }
 
+    /**
+     * Get the user from the cache, or from Discord when the bot doesn't cache users
+     * @param bot The bot to look the user up with
+     * @return Future completed with the user
+     */
+    private CompletableFuture<User> user(IDiscordBot bot) {
+        return bot.getJDA().retrieveUserById(this.discordID).useCache(true).submit();
+    }
+
     @Override
-    public String discordName(IDiscordBot bot) {
-        return bot.getJDA().getUserById(this.discordID).getGlobalName();
+    public CompletableFuture<String> discordName(IDiscordBot bot) {
+        return user(bot).thenApply(User::getGlobalName);
     }
 
     @Override
-    public String discordTag(IDiscordBot bot) {
-        return bot.getJDA().getUserById(this.discordID).getGlobalName() + "#" + bot.getJDA().getUserById(this.discordID).getDiscriminator();
+    public CompletableFuture<String> discordTag(IDiscordBot bot) {
+        return user(bot).thenApply(user -> user.getGlobalName() + "#" + user.getDiscriminator());
     }
 
     @Override
-    public String discordAvatar(IDiscordBot bot) {
-        return bot.getJDA().getUserById(this.discordID).getAvatarUrl();
+    public CompletableFuture<String> discordAvatar(IDiscordBot bot) {
+        return user(bot).thenApply(User::getAvatarUrl);
     }
 
     @Override
-    public boolean isBot(IDiscordBot bot) {
-        return bot.getJDA().getUserById(this.discordID).isBot();
+    public CompletableFuture<Boolean> isBot(IDiscordBot bot) {
+        return user(bot).thenApply(User::isBot);
     }
 
     @Override
     public void sendPrivateMessage(IDiscordBot bot, String message) {
-        bot.getJDA().getUserById(this.discordID).openPrivateChannel().queue(channel -> channel.sendMessage(message).queue());
+        bot.openPrivateChannel(this.discordID)
+                .thenCompose(channel -> channel.sendMessage(message).submit())
+                .exceptionally(failure -> {
+                    Logger.log("Failed to send a private message to user ID: " + this.discordID);
+                    return null;
+                });
     }
 
     @Override
@@ -189,9 +204,8 @@ public abstract class AbstractDiscordUser implements IDiscordUser {
 
     @Override
     public void setNickname(Guild guild, String nickname) {
-        Member member = guild.getMember(UserSnowflake.fromId(this.discordID));
-        if (member != null)
-            guild.modifyNickname(member, nickname).queue();
+        // Members aren't cached with the lean profile
+        guild.retrieveMemberById(this.discordID).queue(member -> guild.modifyNickname(member, nickname).queue());
     }
 
     @Override
@@ -0,0 +1,75 @@
+package io.github.adainish.cobblemonupdater.api.discord;
+
+import net.dv8tion.jda.api.JDA;
+import net.dv8tion.jda.api.entities.Guild;
+
+/**
+ * Reports what JDA keeps in memory, to confirm the bot leaves the server heap alone.
+ * The byte sizes are rough estimates of what each cached entity retains, not measurements.
+ *
+ * @Author Adainish
+ */
+public class CacheFootprint
+{
+    private static final long MEMBER_BYTES = 1024;
+    private static final long USER_BYTES = 512;
+    private static final long ROLE_BYTES = 512;
+    private static final long CHANNEL_BYTES = 768;
+    private static final long EMOJI_BYTES = 384;
+    private static final long STICKER_BYTES = 384;
+    private static final long VOICE_STATE_BYTES = 256;
+
+    /**
+     * Count the cached entities of a ready JDA instance
+     * @param jda The JDA instance
+     * @param lean Whether the bot was built with the lean profile
+     * @return The footprint as a Discord message
+     */
+    public static String describe(JDA jda, boolean lean) {
+        long channels = 0, roles = 0, members = 0, emojis = 0, stickers = 0, voiceStates = 0, uncachedMembers = 0;
+        for (Guild guild : jda.getGuildCache()) {
+            channels += guild.getChannels().size();
+            roles += guild.getRoleCache().size();
+            long cachedMembers = guild.getMemberCache().size();
+            members += cachedMembers;
+            uncachedMembers += Math.max(0, guild.getMemberCount() - cachedMembers);
+            emojis += guild.getEmojiCache().size();
+            stickers += guild.getStickerCache().size();
+            voiceStates += guild.getVoiceStates().size();
+        }
+        long users = jda.getUserCache().size();
+        long estimated = channels * CHANNEL_BYTES + roles * ROLE_BYTES + members * MEMBER_BYTES + users * USER_BYTES
+                + emojis * EMOJI_BYTES + stickers * STICKER_BYTES + voiceStates * VOICE_STATE_BYTES;
+        return "```\n" +
+                String.format("%-13s %8s%n", "Cache", "Entries") +
+                String.format("%-13s %8d%n", "Guilds", jda.getGuildCache().size()) +
+                String.format("%-13s %8d%n", "Channels", channels) +
+                String.format("%-13s %8d%n", "Roles", roles) +
+                String.format("%-13s %8d%n", "Users", users) +
+                String.format("%-13s %8d%n", "Members", members) +
+                String.format("%-13s %8d%n", "Emojis", emojis) +
+                String.format("%-13s %8d%n", "Stickers", stickers) +
+                String.format("%-13s %8d%n", "Voice states", voiceStates) +
+                "```\n" +
+                "Profile: " + (lean ? "lean" : "default") + ", intents: " + intents(jda) +
+                "\nEstimated cache heap: " + formatBytes(estimated) +
+                "\nMembers not cached: " + uncachedMembers + " (about " + formatBytes(uncachedMembers * (MEMBER_BYTES + USER_BYTES)) + " with a full member cache)";
+    }
+
+    /**
+     * JDA leaves GUILDS out of the intents it reports, it is always subscribed to
+     */
+    private static String intents(JDA jda) {
+        StringBuilder intents = new StringBuilder("GUILDS");
+        jda.getGatewayIntents().forEach(intent -> intents.append(", ").append(intent));
+        return intents.toString();
+    }
+
+    private static String formatBytes(long bytes) {
+        if (bytes < 1024)
+            return bytes + " B";
+        if (bytes < 1024 * 1024)
+            return String.format("%.1f KiB", bytes / 1024.0);
+        return String.format("%.1f MiB", bytes / (1024.0 * 1024.0));
+    }
+}
@@ -2,12 +2,40 @@ package io.github.adainish.cobblemonupdater.api.discord;
 
 import io.github.adainish.cobblemonupdater.Cobblemonupdater;
 import io.github.adainish.cobblemonupdater.api.Logger;
+import io.github.adainish.cobblemonupdater.api.download.Downloader;
+import io.github.adainish.cobblemonupdater.api.download.ProgressListener;
+import io.github.adainish.cobblemonupdater.api.http.HrefExtractor;
+import io.github.adainish.cobblemonupdater.api.http.HttpCache;
+import io.github.adainish.cobblemonupdater.api.http.HttpService;
+import io.github.adainish.cobblemonupdater.api.metrics.Counter;
+import io.github.adainish.cobblemonupdater.api.metrics.Gauge;
+import io.github.adainish.cobblemonupdater.api.metrics.Histogram;
+import io.github.adainish.cobblemonupdater.api.metrics.Metrics;
+import io.github.adainish.cobblemonupdater.api.server.RestartScheduler;
+import io.github.adainish.cobblemonupdater.api.server.TickSampler;
+import io.github.adainish.cobblemonupdater.api.update.ArtefactCrawler;
+import io.github.adainish.cobblemonupdater.api.update.ArtifactStore;
+import io.github.adainish.cobblemonupdater.api.update.CobblemonVersion;
+import io.github.adainish.cobblemonupdater.api.update.JarIndex;
+import io.github.adainish.cobblemonupdater.api.update.JarSwapper;
+import io.github.adainish.cobblemonupdater.api.update.ModJarValidator;
+import io.github.adainish.cobblemonupdater.api.update.StagedUpdate;
+import io.github.adainish.cobblemonupdater.api.update.VersionPoller;
+import io.github.adainish.cobblemonupdater.config.Config;
 import net.dv8tion.jda.api.JDA;
 import net.dv8tion.jda.api.JDABuilder;
 import net.dv8tion.jda.api.OnlineStatus;
 import net.dv8tion.jda.api.entities.Activity;
 import net.dv8tion.jda.api.events.interaction.command.SlashCommandInteractionEvent;
-import net.dv8tion.jda.api.interactions.commands.build.Commands;
+import net.dv8tion.jda.api.events.session.ReadyEvent;
+import net.dv8tion.jda.api.events.session.SessionDisconnectEvent;
+import net.dv8tion.jda.api.events.session.SessionRecreateEvent;
+import net.dv8tion.jda.api.events.session.SessionResumeEvent;
+import net.dv8tion.jda.api.events.session.ShutdownEvent;
+import net.dv8tion.jda.api.requests.GatewayIntent;
+import net.dv8tion.jda.api.utils.ChunkingFilter;
+import net.dv8tion.jda.api.utils.MemberCachePolicy;
+import net.dv8tion.jda.api.utils.cache.CacheFlag;
 import net.fabricmc.loader.api.FabricLoader;
 import net.minecraft.network.chat.Component;
 import net.minecraft.server.MinecraftServer;
@@ -16,17 +44,25 @@ import org.w3c.dom.Document;
 import org.w3c.dom.NodeList;
 
 import javax.xml.parsers.DocumentBuilderFactory;
-import java.io.BufferedReader;
+import java.awt.Color;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.Reader;
 import java.lang.reflect.InvocationTargetException;
-import java.net.HttpURLConnection;
 import java.net.URL;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
-import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 /**
  * A class that represents a Discord bot.
@@ -44,6 +80,114 @@ public class DiscordBot extends AbstractDiscordBot implements IDiscordBot {
 
     public String cobblemonVersionURL = "";
 
+    /**
+     * Where the bot is in its connection lifecycle
+     */
+    public enum State
+    {
+        /**
+         * Logging in, waiting for the gateway handshake
+         */
+        CONNECTING,
+        /**
+         * Connected, commands are registered and the background work runs
+         */
+        READY,
+        /**
+         * Not connected, JDA keeps reconnecting in the background
+         */
+        DEGRADED,
+        /**
+         * Logged out or shut down
+         */
+        STOPPED
+    }
+
+    private volatile State state = State.STOPPED;
+
+    /**
+     * Completed with the JDA instance the first time the gateway is ready
+     */
+    private final CompletableFuture<JDA> ready = new CompletableFuture<>();
+
+    private static final Counter COMMANDS = Metrics.counter("cobblemonupdater_commands_total",
+            "Slash commands received", "command");
+    private static final Histogram COMMAND_HANDLER = Metrics.histogram("cobblemonupdater_command_handler_seconds",
+            "Time the JDA event thread spent handling a slash command", Metrics.LATENCY_BUCKETS, "command");
+    private static final Histogram COMMAND_DISPATCH = Metrics.histogram("cobblemonupdater_command_dispatch_latency_seconds",
+            "Time from a slash command being issued to its handler running", Metrics.LATENCY_BUCKETS, "command");
+    private static final Histogram VERSION_LOOKUP = Metrics.histogram("cobblemonupdater_version_lookup_duration_seconds",
+            "Time taken to determine the latest Cobblemon version", Metrics.LATENCY_BUCKETS, "track");
+    private static final Counter DOWNLOADS = Metrics.counter("cobblemonupdater_downloads_total",
+            "Jar downloads by outcome", "outcome");
+    private static final Counter DOWNLOAD_BYTES = Metrics.counter("cobblemonupdater_download_bytes_total",
+            "Bytes of completed jar downloads");
+    private static final Histogram DOWNLOAD_DURATION = Metrics.histogram("cobblemonupdater_download_duration_seconds",
+            "Time taken by completed jar downloads", Metrics.DOWNLOAD_BUCKETS);
+    private static final Gauge DOWNLOAD_RATE = Metrics.gauge("cobblemonupdater_download_last_bytes_per_second",
+            "Average throughput of the last completed jar download");
+
+    /**
+     * The latest version parsed from a listing body, reused while the cache returns the same body
+     */
+    private record ParsedListing(String body, String latestVersion) {
+    }
+
+    /**
+     * The result of a version lookup, either the version or why there is none
+     */
+    public record VersionLookup(String version, String failure) {
+        public static final VersionLookup TIMED_OUT = new VersionLookup(null, "lookup timed out");
+        public static final VersionLookup FAILED = new VersionLookup(null, "lookup failed");
+
+        /**
+         * @param version The version returned by {@link #getLatestCobblemonVersionFromURL(boolean)}
+         * @return The found version, or {@link #FAILED} if no version was found
+         */
+        public static VersionLookup of(String version) {
+            if (!isKnownVersion(version))
+                return FAILED;
+            return new VersionLookup(version, null);
+        }
+
+        public boolean found() {
+            return version != null;
+        }
+
+        public String describe() {
+            return found() ? version : "Unknown (" + failure + ")";
+        }
+    }
+
+    private static final String UNKNOWN_VERSION = "unknown";
+    private static final String NO_SERVERS = "No servers available for downloading";
+
+    private final Map<String, ParsedListing> parsedListings = new ConcurrentHashMap<>();
+
+    /**
+     * Builds staged in the background per track, true for snapshots
+     */
+    private final Map<Boolean, StagedUpdate> stagedUpdates = new ConcurrentHashMap<>();
+
+    /**
+     * Only one download into the staging directory at a time
+     */
+    private final Object stagingLock = new Object();
+
+    /**
+     * Announces new Cobblemon builds, started once the bot is ready
+     */
+    private VersionPoller versionPoller;
+
+    /**
+     * Runs version lookups so slash commands never wait on the network on the JDA event thread
+     */
+    private final ExecutorService lookupExecutor = Executors.newFixedThreadPool(4, runnable -> {
+        Thread thread = new Thread(runnable, "CobblemonUpdater-Lookup");
+        thread.setDaemon(true);
+        return thread;
+    });
+
     /**
      * Default constructor
      */
@@ -62,9 +206,10 @@ public class DiscordBot extends AbstractDiscordBot implements IDiscordBot {
     }
 
     /**
-     * Log in to the bot
+     * Start logging in to the bot without waiting for the gateway.
+     * The handshake finishes on JDA's threads, the commands and background work start in {@link #onReady(ReadyEvent)}.
      * @param args Token to log in with
-     * @throws Exception If login fails
+     * @throws Exception If the login could not be started
      */
     @Override
     public void login(String args) throws Exception {
@@ -74,48 +219,132 @@ public class DiscordBot extends AbstractDiscordBot implements IDiscordBot {
         }
         try {
 
-            JDABuilder jdaBuilder = JDABuilder.createDefault(args);
+            JDABuilder jdaBuilder = config().discordLeanProfile ? leanBuilder(args) : JDABuilder.createDefault(args);
             jdaBuilder.setStatus(OnlineStatus.ONLINE);
             jdaBuilder.setActivity(Activity.playing("Cobblemon Updater v1.0"));
             jdaBuilder.addEventListeners(this);
-            JDA jda = jdaBuilder.build();
-            jda.awaitReady();
-            Logger.log("Registering /cobblemonstatus command");
-            jda.upsertCommand(Commands.slash("cobblemonstatus", "Check the Cobblemon version status")
-                            .addOption(net.dv8tion.jda.api.interactions.commands.OptionType.BOOLEAN, "use_snapshots", "Use snapshot builds instead of releases", false))
-                    .queue();
-
-            Logger.log("Registering /setupdateurl command");
-            jda.upsertCommand(Commands.slash("setupdateurl", "Set the Cobblemon update URL")
-                    .addOption(net.dv8tion.jda.api.interactions.commands.OptionType.STRING, "url", "The update URL", true)).queue();
-
-            Logger.log("Registering /updatespecified command");
-            jda.upsertCommand(
-                    Commands.slash("updatespecified", "Update Cobblemon with a specific jar from a URL")
-                            .addOption(net.dv8tion.jda.api.interactions.commands.OptionType.STRING, "url", "Direct URL to the jar", true)
-            ).queue();
-
-            Logger.log("Registering /updatecobblemon command");
-            jda.upsertCommand(
-                    Commands.slash("updatecobblemon", "Manually trigger a Cobblemon update")
-                            .addOption(net.dv8tion.jda.api.interactions.commands.OptionType.BOOLEAN, "ignore_mc_version", "Ignore MC version and grab highest Cobblemon version", false)
-                            .addOption(net.dv8tion.jda.api.interactions.commands.OptionType.BOOLEAN, "use_snapshots", "Use snapshot builds instead of releases", false)
-            ).queue();
-
-
-            this.setJDA(jda);
+            this.setServerID(Cobblemonupdater.config.guildID);
+            this.setDefaultChannel(Cobblemonupdater.config.channelID);
             this.cobblemonVersionURL = Cobblemonupdater.config.cobblemonUpdateURL;
-            Logger.log("Discord bot logged in successfully!");
             this.setToken(args);
+            this.state = State.CONNECTING;
+            this.setJDA(jdaBuilder.build());
+            Logger.log("Connecting the Discord bot...");
+            int timeoutSeconds = Math.max(1, config().discordReadyTimeoutSeconds);
+            CompletableFuture.delayedExecutor(timeoutSeconds, TimeUnit.SECONDS).execute(() -> {
+                if (this.state == State.CONNECTING) {
+                    this.state = State.DEGRADED;
+                    Logger.warn("Discord is not ready after " + timeoutSeconds + " seconds, still trying in the background");
+                }
+            });
         } catch (Exception e) {
+            this.state = State.STOPPED;
+            this.ready.completeExceptionally(e);
             Logger.log(e.getMessage());
             throw new Exception("Failed to log in");
         }
 
     }
 
+    /**
+     * A builder that keeps only what slash commands and embeds need.
+     * The GUILDS intent keeps guilds, channels and roles cached and up to date, there are no other gateway intents,
+     * cache flags or members, so the footprint doesn't grow with the size of the guild.
+     *
+     * @param token The token to log in with
+     * @return The builder
+     */
+    private static JDABuilder leanBuilder(String token) {
+        // GatewayIntent has no GUILDS constant, JDABuilder always subscribes to it and these are the intents on top
+        return JDABuilder.createLight(token, EnumSet.noneOf(GatewayIntent.class))
+                .disableCache(EnumSet.allOf(CacheFlag.class))
+                .setMemberCachePolicy(MemberCachePolicy.NONE)
+                .setChunkingFilter(ChunkingFilter.NONE)
+                .setLargeThreshold(50);
+    }
+
+    @Override
+    public void onReady(ReadyEvent event) {
+        if (this.state == State.STOPPED || !this.ready.complete(event.getJDA()))
+            return;
+        this.state = State.READY;
+        Logger.log("Discord bot logged in successfully!");
+        Logger.debug(() -> CacheFootprint.describe(event.getJDA(), config().discordLeanProfile));
+        new SlashCommands(Cobblemonupdater.getConfigDir()).sync(event.getJDA(), config().guildID);
+        if (config().pollerEnabled) {
+            this.versionPoller = new VersionPoller(this, config());
+            this.versionPoller.start();
+        }
+        scheduleHealthReports();
+    }
+
+    @Override
+    public void onSessionDisconnect(SessionDisconnectEvent event) {
+        if (this.state == State.READY) {
+            this.state = State.DEGRADED;
+            Logger.warn("Lost the connection to Discord, reconnecting...");
+        }
+    }
+
+    @Override
+    public void onSessionResume(SessionResumeEvent event) {
+        reconnected();
+    }
+
+    @Override
+    public void onSessionRecreate(SessionRecreateEvent event) {
+        reconnected();
+    }
+
+    private void reconnected() {
+        if (this.state == State.DEGRADED && this.ready.isDone()) {
+            this.state = State.READY;
+            Logger.log("Reconnected to Discord");
+        }
+    }
+
+    @Override
+    public void onShutdown(ShutdownEvent event) {
+        this.state = State.STOPPED;
+        if (this.ready.completeExceptionally(new IllegalStateException("Discord closed the connection: " + event.getCloseCode())))
+            Logger.warn("The Discord bot shut down before it was ready, close code " + event.getCloseCode() + ". Check the bot token");
+    }
+
+    public State getState() {
+        return this.state;
+    }
+
+    public boolean isReady() {
+        return this.state == State.READY;
+    }
+
+    /**
+     * @return A future completed with the JDA instance once the bot is first ready, or failed if it never gets there
+     */
+    public CompletableFuture<JDA> getReadyFuture() {
+        return this.ready.copy();
+    }
+
+    /**
+     * Log out of the bot and stop the poller and lookup threads
+     */
+    @Override
+    public void logout() {
+        this.state = State.STOPPED;
+        this.ready.cancel(false);
+        if (this.versionPoller != null)
+            this.versionPoller.stop();
+        if (Cobblemonupdater.tickSampler != null)
+            Cobblemonupdater.tickSampler.stopReports();
+        super.logout();
+        this.lookupExecutor.shutdownNow();
+    }
+
     private String normalizeVersion(String version) {
         if (version == null) return null;
+        CobblemonVersion parsed = CobblemonVersion.of(version);
+        if (parsed != null)
+            return parsed.withoutBuild();
         int plusIndex = version.indexOf('+');
         return plusIndex > 0 ? version.substring(0, plusIndex) : version;
     }
@@ -123,29 +352,61 @@ public class DiscordBot extends AbstractDiscordBot implements IDiscordBot {
 
     @Override
     public void onSlashCommandInteraction(SlashCommandInteractionEvent event) {
+        long start = System.nanoTime();
+        String command = event.getName();
+        COMMANDS.labels(command).inc();
+        COMMAND_DISPATCH.labels(command).observe(Math.max(0, System.currentTimeMillis() - event.getTimeCreated().toInstant().toEpochMilli()) / 1000.0);
+        try {
+            handleSlashCommand(event);
+        } finally {
+            COMMAND_HANDLER.labels(command).observeSince(start);
+        }
+    }
+
+    private void handleSlashCommand(SlashCommandInteractionEvent event) {
         switch (event.getName()) {
             case "cobblemonstatus" -> {
                 boolean useSnapshots = false;
                 if (event.getOption("use_snapshots") != null) {
                     useSnapshots = event.getOption("use_snapshots").getAsBoolean();
                 }
-                String currentVersion = getCurrentCobblemonVersion();
-                String latestVersion = getLatestCobblemonVersionFromURL(useSnapshots);
-                boolean upToDate = false;
-                if (currentVersion != null && latestVersion != null) {
-                    upToDate = normalizeVersion(currentVersion).equals(normalizeVersion(latestVersion));
-                }
-                String mcVersion = getCurrentMinecraftVersion();
-                String latestRelease = getLatestCobblemonVersionFromURL(false);
-                String latestSnapshot = getLatestCobblemonVersionFromURL(true);
-                String reply = "Current Minecraft version: " + (mcVersion != null ? mcVersion : "Unknown") +
-                        "\nCurrent Cobblemon version: " + (currentVersion != null ? currentVersion : "Unknown") +
-                        "\nLatest Cobblemon release: " + (latestRelease != null ? latestRelease : "Unknown") +
-                        "\nLatest Cobblemon snapshot: " + (latestSnapshot != null ? latestSnapshot : "Unknown") +
-                        "\nServer is " + (upToDate ? "up to date ✅" : "out of date ❌");
-
-                event.reply(reply).queue();
-
+                // Acknowledge right away, the lookups can take longer than the interaction deadline
+                event.deferReply().queue();
+                CompletableFuture<VersionLookup> releaseLookup = lookupLatestVersion(false);
+                CompletableFuture<VersionLookup> snapshotLookup = lookupLatestVersion(true);
+                CompletableFuture<VersionLookup> selectedLookup = useSnapshots ? snapshotLookup : releaseLookup;
+                StagedUpdate staged = getStagedUpdate(useSnapshots);
+                CompletableFuture.allOf(releaseLookup, snapshotLookup).whenComplete((ignored, throwable) -> {
+                    try {
+                        String currentVersion = getCurrentCobblemonVersion();
+                        VersionLookup latestVersion = selectedLookup.join();
+                        String mcVersion = getCurrentMinecraftVersion();
+                        VersionLookup latestRelease = releaseLookup.join();
+                        VersionLookup latestSnapshot = snapshotLookup.join();
+                        String status;
+                        if (currentVersion == null || !latestVersion.found()) {
+                            status = "\nUnable to determine whether the server is up to date";
+                        } else {
+                            boolean upToDate = normalizeVersion(currentVersion).equals(normalizeVersion(latestVersion.version()));
+                            status = "\nServer is " + (upToDate ? "up to date ✅" : "out of date ❌");
+                        }
+                        String reply = "Current Minecraft version: " + (mcVersion != null ? mcVersion : "Unknown") +
+                                "\nCurrent Cobblemon version: " + (currentVersion != null ? currentVersion : "Unknown") +
+                                "\nLatest Cobblemon release: " + latestRelease.describe() +
+                                "\nLatest Cobblemon snapshot: " + latestSnapshot.describe() +
+                                status;
+                        if (staged != null)
+                            reply += "\nStaged update: " + staged.version() + " (applied by /updatecobblemon without downloading)";
+                        RestartScheduler scheduler = Cobblemonupdater.restartScheduler;
+                        if (scheduler != null && scheduler.getState() != RestartScheduler.State.IDLE)
+                            reply += "\n" + scheduler.describe();
+
+                        event.getHook().editOriginal(reply).queue();
+                    } catch (Exception e) {
+                        Logger.log(e);
+                        event.getHook().editOriginal("Failed to check the Cobblemon version status.").queue();
+                    }
+                });
             }
             case "setupdateurl" -> {
                 String url = event.getOption("url").getAsString();
@@ -177,6 +438,32 @@ public class DiscordBot extends AbstractDiscordBot implements IDiscordBot {
                 long userId = event.getUser().getIdLong();
                 new Thread(() -> updateCobblemonFromUrl(userId, url)).start();
             }
+            case "rollbackcobblemon" -> {
+                String version = event.getOption("version") != null ? event.getOption("version").getAsString() : null;
+                event.reply("Starting Cobblemon rollback...").setEphemeral(true).queue();
+                long userId = event.getUser().getIdLong();
+                new Thread(() -> rollbackCobblemon(userId, version)).start();
+            }
+            case "serverhealth" -> {
+                TickSampler sampler = Cobblemonupdater.tickSampler;
+                if (sampler == null)
+                    event.reply("The server has not started yet.").setEphemeral(true).queue();
+                else event.reply(sampler.report(getCurrentCobblemonVersion())).queue();
+            }
+            case "discordfootprint" -> event.reply(CacheFootprint.describe(event.getJDA(), config().discordLeanProfile)).setEphemeral(true).queue();
+            case "deferrestart" -> {
+                int minutes = event.getOption("minutes").getAsInt();
+                RestartScheduler scheduler = Cobblemonupdater.restartScheduler;
+                if (scheduler != null && scheduler.defer(minutes))
+                    event.reply(scheduler.describe()).setEphemeral(true).queue();
+                else event.reply("No restart is pending.").setEphemeral(true).queue();
+            }
+            case "cancelrestart" -> {
+                RestartScheduler scheduler = Cobblemonupdater.restartScheduler;
+                if (scheduler != null && scheduler.cancel())
+                    event.reply("Restart cancelled, the installed jar is loaded on the next restart.").setEphemeral(true).queue();
+                else event.reply("No restart is pending.").setEphemeral(true).queue();
+            }
             case "reloadconfig" -> {
                 try {
                     Cobblemonupdater.instance.reload();
@@ -189,6 +476,30 @@ public class DiscordBot extends AbstractDiscordBot implements IDiscordBot {
     }
 
 
+    /**
+     * Look up the latest Cobblemon version off the JDA event thread
+     *
+     * @param useSnapshots Whether to look up snapshot builds
+     * @return A future completing with the version, or with why the lookup failed or that it timed out
+     */
+    public CompletableFuture<VersionLookup> lookupLatestVersion(boolean useSnapshots) {
+        int timeoutSeconds = Cobblemonupdater.config != null ? Cobblemonupdater.config.lookupTimeoutSeconds : 10;
+        return CompletableFuture.supplyAsync(() -> VersionLookup.of(getLatestCobblemonVersionFromURL(useSnapshots)), this.lookupExecutor)
+                .completeOnTimeout(VersionLookup.TIMED_OUT, timeoutSeconds, TimeUnit.SECONDS)
+                .exceptionally(throwable -> {
+                    Logger.warn("Cobblemon version lookup failed: " + throwable.getMessage());
+                    return VersionLookup.FAILED;
+                });
+    }
+
+    /**
+     * @param version A version returned by {@link #getLatestCobblemonVersionFromURL(boolean)}
+     * @return Whether it is an actual version rather than one of the placeholders used when the lookup failed
+     */
+    public static boolean isKnownVersion(String version) {
+        return version != null && !version.equals(UNKNOWN_VERSION) && !version.equals(NO_SERVERS);
+    }
+
     /**
      * Broadcasts a message to a channel
      *
@@ -201,43 +512,170 @@ public class DiscordBot extends AbstractDiscordBot implements IDiscordBot {
         this.broadcast(title, "\n" + message, channel, pingEveryone);
     }
 
-    public String getLatestCobblemonVersionFromURL(boolean useSnapshots) {
-        String latestVersion = "unknown";
+    /**
+     * Get the artefacts listing URL of a track
+     *
+     * @param useSnapshots Whether to use the snapshot track
+     * @return The listing URL
+     */
+    public String getArtefactsListUrl(boolean useSnapshots) {
         String artefactsBase = "https://artefacts.cobblemon.com";
         String artefactsPath = useSnapshots ? "/snapshots/com/cobblemon/fabric/" : "/releases/com/cobblemon/fabric/";
-        String listUrl = artefactsBase + artefactsPath;
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new URL(listUrl).openStream()))) {
-            String line;
-            Pattern dirPattern = Pattern.compile("href=\"\\.\\/(.+?)\\/\"");
-            List<String> versionDirs = new ArrayList<>();
-            while ((line = reader.readLine()) != null) {
-                Matcher dirMatcher = dirPattern.matcher(line);
-                while (dirMatcher.find()) {
-                    versionDirs.add(dirMatcher.group(1));
-                }
+        return artefactsBase + artefactsPath;
+    }
+
+    /**
+     * Revalidate the cached listing with a conditional request and return the latest version.
+     * An unchanged listing costs a single 304 response and no parsing.
+     *
+     * @param useSnapshots Whether to use the snapshot track
+     * @return The latest version
+     */
+    public String refreshLatestCobblemonVersion(boolean useSnapshots) {
+        HttpCache cache = Cobblemonupdater.httpCache;
+        if (cache != null) {
+            try {
+                cache.revalidate(getArtefactsListUrl(useSnapshots));
+            } catch (IOException e) {
+                Logger.warn("Failed to refresh the Cobblemon listing: " + e.getMessage());
             }
+        }
+        return getLatestCobblemonVersionFromURL(useSnapshots);
+    }
+
+    public String getLatestCobblemonVersionFromURL(boolean useSnapshots) {
+        long start = System.nanoTime();
+        try {
+            return findLatestCobblemonVersion(useSnapshots);
+        } finally {
+            VERSION_LOOKUP.labels(useSnapshots ? "snapshot" : "release").observeSince(start);
+        }
+    }
+
+    private String findLatestCobblemonVersion(boolean useSnapshots) {
+        String latestVersion = UNKNOWN_VERSION;
+        String listUrl = getArtefactsListUrl(useSnapshots);
+        try {
+            String listing = fetchCached(listUrl);
+            // The cache hands back the same body until the listing changes, so the scan only runs once per change
+            ParsedListing parsed = this.parsedListings.get(listUrl);
+            if (parsed != null && parsed.body == listing)
+                return parsed.latestVersion;
+            List<String> versionDirs = ArtefactCrawler.versionDirectories(listing);
             // Find the highest version directory
-            String highestVersion = null;
+            CobblemonVersion highestVersion = null;
             for (String dir : versionDirs) {
                 // Only consider non-snapshot dirs if not using snapshots
                 if (!useSnapshots && dir.contains("SNAPSHOT")) continue;
-                String version = dir.split("\\+")[0];
-                if (highestVersion == null || compareVersions(version, highestVersion) > 0) {
+                CobblemonVersion version = CobblemonVersion.of(dir);
+                if (version == null) continue;
+                if (highestVersion == null || version.compareIgnoringBuild(highestVersion) > 0) {
                     highestVersion = version;
                 }
             }
             if (highestVersion != null) {
-                latestVersion = highestVersion;
+                latestVersion = highestVersion.withoutBuild();
             }
+            this.parsedListings.put(listUrl, new ParsedListing(listing, latestVersion));
         } catch (Exception e) {
             Logger.log(e);
-            latestVersion = "No servers available for downloading";
+            latestVersion = NO_SERVERS;
         }
         return latestVersion;
     }
 
+    /**
+     * Fetch a listing or metadata file through the shared HTTP cache
+     *
+     * @param url The URL to fetch
+     * @return The response body
+     * @throws IOException If the URL could not be fetched and nothing is cached
+     */
+    private String fetchCached(String url) throws IOException {
+        HttpCache cache = Cobblemonupdater.httpCache;
+        if (cache == null)
+            return http().getString(url);
+        return cache.get(url);
+    }
 
+    /**
+     * Fetch a version directory of a crawl, kept in memory only since every crawl revalidates it
+     *
+     * @param url The URL to fetch
+     * @return The response body
+     * @throws IOException If the URL could not be fetched and nothing is cached
+     */
+    private String fetchDirectory(String url) throws IOException {
+        HttpCache cache = Cobblemonupdater.httpCache;
+        if (cache == null)
+            return http().getString(url);
+        return cache.get(url, false);
+    }
+
+    /**
+     * Get the shared network layer, creating a default one when the mod has not loaded its config
+     *
+     * @return The network layer
+     */
+    private HttpService http() {
+        if (Cobblemonupdater.httpService == null)
+            Cobblemonupdater.httpService = new HttpService(config());
+        return Cobblemonupdater.httpService;
+    }
 
+    private Config config() {
+        return Cobblemonupdater.config != null ? Cobblemonupdater.config : new Config();
+    }
+
+    /**
+     * Get the swapper that installs jars into mods/, created if the mod has not set one up
+     *
+     * @return The jar swapper
+     */
+    private JarSwapper jarSwapper() {
+        if (Cobblemonupdater.jarSwapper == null) {
+            Cobblemonupdater.jarSwapper = new JarSwapper(Paths.get("mods"), Cobblemonupdater.getConfigDir(), config().retainedCobblemonJars);
+            Cobblemonupdater.jarSwapper.recover();
+        }
+        return Cobblemonupdater.jarSwapper;
+    }
+
+    /**
+     * Download a URL to a file through a resumable .part file, replacing the file once it is complete
+     *
+     * @param url      The URL to download
+     * @param target   The file to write to
+     * @param listener Receives progress updates
+     * @return The finished download
+     * @throws IOException If the download failed or the server did not respond with 200
+     */
+    private Downloader.Result downloadTo(String url, Path target, ProgressListener listener) throws IOException {
+        long start = System.nanoTime();
+        try {
+            Downloader.Result result = new Downloader(http(), config()).download(url, target, listener);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            DOWNLOADS.labels(result.resumed() ? "resumed" : "completed").inc();
+            DOWNLOAD_BYTES.inc(result.bytes());
+            DOWNLOAD_DURATION.observe(seconds);
+            if (seconds > 0)
+                DOWNLOAD_RATE.set(result.bytes() / seconds);
+            return result;
+        } catch (IOException | RuntimeException e) {
+            DOWNLOADS.labels("failed").inc();
+            throw e;
+        }
+    }
+
+    /**
+     * Create a progress message for a download, sent to the user on the first update
+     *
+     * @param userID The user to report to
+     * @param title  What is being downloaded
+     * @return The progress message
+     */
+    private DownloadProgressMessage progressMessage(long userID, String title) {
+        return new DownloadProgressMessage(this, userID, title, Math.max(1, config().downloadProgressIntervalSeconds) * 1000L);
+    }
 
     public String getLatestCobblemonVersionURL(String repoBaseUrl) {
         String group = "com.cobblemon";
@@ -246,7 +684,7 @@ public class DiscordBot extends AbstractDiscordBot implements IDiscordBot {
         if (!metadataUrl.endsWith("/")) metadataUrl += "/";
         metadataUrl += group.replace('.', '/') + "/" + artifact + "/maven-metadata.xml";
         String latestVersion = "unknown";
-        try (InputStream in = new URL(metadataUrl).openStream()) {
+        try (InputStream in = new ByteArrayInputStream(fetchCached(metadataUrl).getBytes(StandardCharsets.UTF_8))) {
             Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(in);
             doc.getDocumentElement().normalize();
             NodeList latestList = doc.getElementsByTagName("latest");
@@ -323,329 +761,461 @@ public class DiscordBot extends AbstractDiscordBot implements IDiscordBot {
     // Add this helper to extract the MC version from a Cobblemon version string
     private String extractMinecraftVersion(String cobblemonVersion) {
         if (cobblemonVersion == null) return null;
-        int plusIndex = cobblemonVersion.indexOf('+');
-        return (plusIndex > 0 && plusIndex < cobblemonVersion.length() - 1)
-                ? cobblemonVersion.substring(plusIndex + 1)
-                : null;
-    }
-
-    // Helper to compare semantic versions
-    private int compareVersions(String v1, String v2) {
-        String[] a1 = v1.split("\\.");
-        String[] a2 = v2.split("\\.");
-        int len = Math.max(a1.length, a2.length);
-        for (int i = 0; i < len; i++) {
-            int n1 = i < a1.length ? Integer.parseInt(a1[i].replaceAll("\\D.*", "")) : 0;
-            int n2 = i < a2.length ? Integer.parseInt(a2[i].replaceAll("\\D.*", "")) : 0;
-            if (n1 != n2) return Integer.compare(n1, n2);
-        }
-        return 0;
+        CobblemonVersion parsed = CobblemonVersion.of(cobblemonVersion);
+        return parsed != null ? parsed.getMinecraftVersion() : null;
     }
 
-    public void updateCobblemon(long userID, boolean ignoreMcVersion, boolean useSnapshots) {
-        String latestVersion = this.getLatestCobblemonVersionFromURL(useSnapshots);
-        String currentVersion = this.getCurrentCobblemonVersion();
+    // Helper to compare semantic versions, parsed strings are cached so repeated comparisons don't split or allocate
+    public static int compareVersions(String v1, String v2) {
+        return CobblemonVersion.compare(v1, v2);
+    }
 
-        if (latestVersion == null || latestVersion.equals("unknown") || latestVersion.equals("No servers available for downloading")) {
-            this.sendDiscordDM(userID, "Unable to determine the latest version of Cobblemon.");
-            return;
+    public void updateCobblemon(long userID, boolean ignoreMcVersion, boolean useSnapshots) {
+        // A build the poller already downloaded and validated only needs to be swapped in
+        StagedUpdate staged = ignoreMcVersion ? null : takeStagedUpdate(useSnapshots);
+        if (staged != null) {
+            Logger.log("Applying staged Cobblemon " + staged.version());
+            this.sendDiscordDM(userID, "Cobblemon " + staged.version() + " was already downloaded and verified in the background.");
+        } else {
+            staged = prepareUpdate(userID, ignoreMcVersion, useSnapshots);
+            if (staged == null)
+                return;
         }
+        applyUpdate(userID, staged);
+    }
 
+    /**
+     * Download and validate the latest Cobblemon build for this server in the background, so a later
+     * /updatecobblemon only has to swap the jar and restart
+     *
+     * @param useSnapshots Whether to stage the latest snapshot rather than the latest release
+     */
+    public void prestageUpdate(boolean useSnapshots) {
+        if (!config().prestageUpdates)
+            return;
+        String latestVersion = getLatestCobblemonVersionFromURL(useSnapshots);
+        if (CobblemonVersion.of(latestVersion) == null)
+            return;
+        // Nothing to stage, checked here so the poller doesn't log an aborted update every interval
         String latestMcVersion = extractMinecraftVersion(latestVersion);
-        String currentMcVersion = getCurrentMinecraftVersion();
-        if (latestMcVersion != null && !latestMcVersion.equals(currentMcVersion)) {
-            this.sendDiscordDM(userID, "Latest Cobblemon version (" + latestVersion + ") is for Minecraft " + latestMcVersion +
-                    ", but the server is running Minecraft " + currentMcVersion + ". Update aborted.");
+        if (latestMcVersion != null && !latestMcVersion.equals(getCurrentMinecraftVersion()))
             return;
-        }
-
-        if (normalizeVersion(currentVersion).equals(normalizeVersion(latestVersion))) {
-            this.sendDiscordDM(userID, "Cobblemon is up to date! Current version: " + currentVersion);
+        if (normalizeVersion(latestVersion).equals(normalizeVersion(getCurrentCobblemonVersion())))
             return;
-        }
+        StagedUpdate staged = stagedUpdates.get(useSnapshots);
+        if (staged != null && Files.exists(staged.file()) && normalizeVersion(staged.version()).equals(normalizeVersion(latestVersion)))
+            return;
+        StagedUpdate prepared = prepareUpdate(0, false, useSnapshots);
+        if (prepared != null)
+            Logger.log("Staged Cobblemon " + prepared.version() + ", /updatecobblemon will apply it without downloading");
+    }
 
-        String group = "com.cobblemon";
-        String artifact = "fabric";
-        String mavenBase = this.cobblemonVersionURL;
-        if (!mavenBase.endsWith("/")) mavenBase += "/";
-        String mavenJarUrl = mavenBase + group.replace('.', '/') + "/" + artifact + "/" + latestVersion + "/" + artifact + "-" + latestVersion + ".jar";
-        boolean downloaded = false;
-
-        // Try Maven first
-        try (InputStream in = new URL(mavenJarUrl).openStream()) {
-            Path modsDir = Paths.get("mods");
-            Files.createDirectories(modsDir);
-            Path tempFile = modsDir.resolve("cobblemon-latest.jar");
-            Files.copy(in, tempFile, StandardCopyOption.REPLACE_EXISTING);
-            downloaded = true;
-        } catch (Exception e) {
-            Logger.log("Maven download failed, trying Modrinth...");
-        }
+    /**
+     * @param useSnapshots The track to look at
+     * @return The staged update of the track, or null if none is staged
+     */
+    public StagedUpdate getStagedUpdate(boolean useSnapshots) {
+        return stagedUpdates.get(useSnapshots);
+    }
 
-        // Helper class
-        class FabricJar {
-            String version;
-            String url;
-            String filename;
-            String mcVersion;
+    /**
+     * Take the staged update of a track if it is still newer than the installed version
+     *
+     * @param useSnapshots The track to take the update from
+     * @return The staged update, or null if there is none worth applying
+     */
+    private StagedUpdate takeStagedUpdate(boolean useSnapshots) {
+        StagedUpdate staged = stagedUpdates.remove(useSnapshots);
+        if (staged == null || !Files.exists(staged.file()))
+            return null;
+        String currentVersion = getCurrentCobblemonVersion();
+        if (compareVersions(normalizeVersion(staged.version()), normalizeVersion(currentVersion)) <= 0)
+            return null;
+        try {
+            // Cheap, and catches a staged jar that changed on disk since it was staged
+            ModJarValidator.validate(staged.file(), staged.version(), getCurrentMinecraftVersion());
+        } catch (IOException e) {
+            Logger.warn("Staged jar " + staged.file().getFileName() + " is no longer valid: " + e.getMessage());
+            return null;
         }
+        return staged;
+    }
 
-        // Fallback: Try Cobblemon artefacts
-        if (!downloaded) {
-            try {
-                String artefactsBase = "https://artefacts.cobblemon.com";
-                String artefactsPath = useSnapshots ? "/snapshots/com/cobblemon/fabric/" : "/releases/com/cobblemon/fabric/";
-                String listUrl = artefactsBase + artefactsPath;
-                Logger.log("[DEBUG] Fetching available jars from: " + listUrl);
-
-                List<FabricJar> fabricJars = new ArrayList<>();
-                try (BufferedReader reader = new BufferedReader(new InputStreamReader(new URL(listUrl).openStream()))) {
-                    String line;
-                    Pattern jarPattern = Pattern.compile("href=\"(Cobblemon-fabric-([\\d\\.]+)\\+([\\w\\.]+)\\.jar)\"");
-                    while ((line = reader.readLine()) != null) {
-                        Logger.log("[DEBUG] Read line: " + line);
-                        Matcher matcher = jarPattern.matcher(line);
-                        while (matcher.find()) {
-                            String filename = matcher.group(1);
-                            String version = matcher.group(2);
-                            String mcVersion = matcher.group(3);
-                            String url = listUrl + filename;
-                            Logger.log("[DEBUG] Matched jar: filename=" + filename + ", version=" + version + ", mcVersion=" + mcVersion + ", url=" + url);
-                            FabricJar jar = new FabricJar();
-                            jar.version = version;
-                            jar.url = url;
-                            jar.filename = filename;
-                            jar.mcVersion = mcVersion;
-                            fabricJars.add(jar);
-                        }
-                    }
-                }
+    /**
+     * Resolve, download and validate the latest Cobblemon build into the staging directory
+     *
+     * @param userID          The user to report to, or 0 to work silently in the background
+     * @param ignoreMcVersion Whether to accept a build for another Minecraft version
+     * @param useSnapshots    Whether to use snapshot builds
+     * @return The staged update, or null if there is nothing to update or it failed
+     */
+    private StagedUpdate prepareUpdate(long userID, boolean ignoreMcVersion, boolean useSnapshots) {
+        synchronized (stagingLock) {
+            String latestVersion = this.getLatestCobblemonVersionFromURL(useSnapshots);
+            String currentVersion = this.getCurrentCobblemonVersion();
+
+            if (!isKnownVersion(latestVersion)) {
+                notify(userID, "Unable to determine the latest version of Cobblemon.");
+                return null;
+            }
 
-// After reading the root directory and before filtering by MC version
-                if (fabricJars.isEmpty()) {
-                    // Parse for subdirectories (version folders)
-                    Pattern dirPattern = Pattern.compile("href=\"\\.\\/(.+?)\\/\"");
-                    List<String> versionDirs = new ArrayList<>();
-                    try (BufferedReader reader = new BufferedReader(new InputStreamReader(new URL(listUrl).openStream()))) {
-                        String line;
-                        while ((line = reader.readLine()) != null) {
-                            Matcher dirMatcher = dirPattern.matcher(line);
-                            while (dirMatcher.find()) {
-                                String dir = dirMatcher.group(1);
-                                Logger.log("[DEBUG] Found version directory: " + dir);
-                                versionDirs.add(dir);
-                            }
-                        }
-                    }
-                    // For each version directory, look for jars
-                    for (String dir : versionDirs) {
-                        String dirUrl = listUrl + dir + "/";
-                        Logger.log("[DEBUG] Checking directory: " + dirUrl);
-                        try (BufferedReader dirReader = new BufferedReader(new InputStreamReader(new URL(dirUrl).openStream()))) {
-                            String line;
-                            // Match both with and without build suffix
-                            Pattern jarPattern = Pattern.compile("href=\"\\./(fabric-([\\d\\.]+)\\+([\\d\\.]+)(?:-[^\"/]+)?\\.jar)\"");
-                            while ((line = dirReader.readLine()) != null) {
-                                Logger.log("[DEBUG] [DIR] Read line: " + line);
-                                Matcher jarMatcher = jarPattern.matcher(line);
-                                while (jarMatcher.find()) {
-                                    String filename = jarMatcher.group(1);
-                                    String cobblemonVersion = jarMatcher.group(2);
-                                    String mcVersion = jarMatcher.group(3);
-                                    String url = dirUrl + filename;
-                                    Logger.log("[DEBUG] Matched jar: filename=" + filename + ", version=" + cobblemonVersion + ", mcVersion=" + mcVersion + ", url=" + url);
-                                    FabricJar jar = new FabricJar();
-                                    jar.version = cobblemonVersion;
-                                    jar.url = url;
-                                    jar.filename = filename;
-                                    jar.mcVersion = mcVersion;
-                                    fabricJars.add(jar);
-                                }
-                        }
-                        } catch (Exception e) {
-                            Logger.log("[DEBUG] Failed to read directory: " + dirUrl + " - " + e.getMessage());
-                        }
-                    }
+            String latestMcVersion = extractMinecraftVersion(latestVersion);
+            String currentMcVersion = getCurrentMinecraftVersion();
+            if (latestMcVersion != null && !latestMcVersion.equals(currentMcVersion)) {
+                notify(userID, "Latest Cobblemon version (" + latestVersion + ") is for Minecraft " + latestMcVersion +
+                        ", but the server is running Minecraft " + currentMcVersion + ". Update aborted.");
+                return null;
+            }
 
-                }
+            if (normalizeVersion(currentVersion).equals(normalizeVersion(latestVersion))) {
+                notify(userID, "Cobblemon is up to date! Current version: " + currentVersion);
+                return null;
+            }
 
+            String group = "com.cobblemon";
+            String artifact = "fabric";
+            String mavenBase = this.cobblemonVersionURL;
+            if (!mavenBase.endsWith("/")) mavenBase += "/";
+            String mavenJarUrl = mavenBase + group.replace('.', '/') + "/" + artifact + "/" + latestVersion + "/" + artifact + "-" + latestVersion + ".jar";
+            boolean downloaded = false;
+            String downloadedVersion = latestVersion;
+            Downloader.Result download = null;
+            String sourceUrl = null;
+            DownloadProgressMessage progress = userID != 0 ? progressMessage(userID, "Downloading Cobblemon " + latestVersion) : null;
+            ProgressListener listener = progress != null ? progress : ProgressListener.NONE;
+            Path downloadedJar;
+            try {
+                downloadedJar = jarSwapper().getStagingDir().resolve("cobblemon-latest.jar");
+            } catch (IOException e) {
+                Logger.log(e);
+                notify(userID, "Failed to create the staging directory. Update aborted.");
+                return null;
+            }
 
-                Logger.log("[DEBUG] Total jars found: " + fabricJars.size());
+            // A version that was installed before is still in the artifact store
+            ArtifactStore store = Cobblemonupdater.artifactStore;
+            if (store != null && store.install(ArtifactStore.coordinate(latestVersion, currentMcVersion), downloadedJar) != null) {
+                notify(userID, "Installing Cobblemon " + latestVersion + " from the local artifact store.");
+                downloaded = true;
+            }
 
-                // Filter by MC version if not ignoring
-                List<FabricJar> matching = new ArrayList<>();
-                if (ignoreMcVersion) {
-                    matching.addAll(fabricJars);
-                    Logger.log("[DEBUG] ignoreMcVersion=true, using all jars");
-                } else {
-                    for (FabricJar jar : fabricJars) {
-                        Logger.log("[DEBUG] Checking jar mcVersion=" + jar.mcVersion + " against currentMcVersion=" + currentMcVersion);
-                        if (jar.mcVersion != null && jar.mcVersion.equals(currentMcVersion)) {
-                            matching.add(jar);
-                        }
-                    }
+            // Try Maven first
+            if (!downloaded) {
+                try {
+                    download = downloadTo(mavenJarUrl, downloadedJar, listener);
+                    sourceUrl = mavenJarUrl;
+                    downloaded = true;
+                } catch (Downloader.ChecksumMismatchException e) {
+                    Logger.warn("Maven download did not match its checksum, trying the Cobblemon artefacts... " + e.getMessage());
+                    notify(userID, "The jar from Maven did not match its published checksum and was discarded.");
+                } catch (Exception e) {
+                    Logger.warn("Maven download failed, trying the Cobblemon artefacts...");
                 }
-                Logger.log("[DEBUG] Matching jars after MC version filter: " + matching.size());
-
-                if (matching.isEmpty()) {
-                    Logger.log("No fabric jar found" + (ignoreMcVersion ? "" : " for MC version " + currentMcVersion) + " in artefacts response.");
-                } else {
-                    Logger.log("Available Fabric jars" + (ignoreMcVersion ? "" : " for MC version " + currentMcVersion) + ":");
-                    for (FabricJar jar : matching) {
-                        Logger.log("[DEBUG] Filename: " + jar.filename + ", Version: " + jar.version + ", MC: " + jar.mcVersion + ", URL: " + jar.url);
-                    }
-                    // Find the highest version
-                    FabricJar latest = matching.get(0);
-                    for (FabricJar jar : matching) {
-                        Logger.log("[DEBUG] Comparing versions: " + jar.version + " vs " + latest.version);
-                        if (compareVersions(jar.version, latest.version) > 0) {
-                            latest = jar;
-                        }
-                    }
-                    Logger.log("Downloading version: " + latest.version + " from: " + latest.url);
-                    try (InputStream jarIn = new URL(latest.url).openStream()) {
-                        Path modsDir = Paths.get("mods");
-                        Files.createDirectories(modsDir);
-                        Path tempFile = modsDir.resolve("cobblemon-latest.jar");
-                        Files.copy(jarIn, tempFile, StandardCopyOption.REPLACE_EXISTING);
-                        Logger.log("[DEBUG] Downloaded jar to: " + tempFile.toString());
+            }
+
+            // Fallback: Try Cobblemon artefacts
+            if (!downloaded) {
+                try {
+                    String listUrl = getArtefactsListUrl(useSnapshots);
+                    Logger.debug(() -> "Fetching available jars from: " + listUrl);
+                    String mcFilter = ignoreMcVersion ? null : currentMcVersion;
+                    int parallelism = Cobblemonupdater.config != null ? Cobblemonupdater.config.crawlerParallelism : 4;
+                    JarIndex index = new ArtefactCrawler(url -> url.equals(listUrl) ? fetchCached(url) : fetchDirectory(url), parallelism)
+                            .crawl(listUrl, mcFilter);
+                    if (Cobblemonupdater.httpCache != null)
+                        Cobblemonupdater.httpCache.flush();
+                    Logger.debug(() -> "Total jars found: " + index.size());
+
+                    JarIndex.Jar latest = index.best(mcFilter);
+                    if (latest == null) {
+                        Logger.warn("No fabric jar found" + (ignoreMcVersion ? "" : " for MC version " + currentMcVersion) + " in artefacts response.");
+                    } else {
+                        Logger.log("Downloading version: " + latest.version() + " from: " + latest.url());
+                        download = downloadTo(latest.url(), downloadedJar, listener);
+                        Logger.debug(() -> "Downloaded jar to: " + downloadedJar);
+                        downloadedVersion = latest.version();
+                        sourceUrl = latest.url();
                         downloaded = true;
                     }
+                } catch (Downloader.ChecksumMismatchException e) {
+                    Logger.warn("Cobblemon artefacts download did not match its checksum: " + e.getMessage());
+                    notify(userID, "The jar from the Cobblemon artefacts did not match its published checksum and was discarded.");
+                } catch (Exception e) {
+                    Logger.warn("Cobblemon artefacts download failed.");
+                    Logger.debug(() -> "Exception: " + e.getMessage());
                 }
-            } catch (Exception e) {
-                Logger.log("Cobblemon artefacts download failed.");
-                Logger.log("[DEBUG] Exception: " + e.getMessage());
             }
-        }
 
+            if (!downloaded) {
+                if (progress != null)
+                    progress.finish("Download failed");
+                notify(userID, "Could not download the latest Cobblemon jar from any source.");
+                return null;
+            }
 
-        if (downloaded) {
             try {
-                Path modsDir = Paths.get("mods");
-                String newJarName = "Cobblemon-fabric-" + normalizeVersion(latestVersion) + "+" + getCurrentMinecraftVersion() + ".jar";
-                Path newJarPath = modsDir.resolve(newJarName);
-
-                try (DirectoryStream<Path> stream = Files.newDirectoryStream(modsDir, "Cobblemon-fabric-*.jar")) {
-                    for (Path path : stream) {
-                        if (!path.getFileName().toString().equals(newJarName)) {
-                            Files.deleteIfExists(path);
-                        }
-                    }
+                // Make sure this is the Cobblemon build we asked for before anything installed is touched
+                ModJarValidator.ModInfo info = ModJarValidator.validate(downloadedJar, downloadedVersion, ignoreMcVersion ? null : currentMcVersion);
+                if (store != null && download != null)
+                    store.put(downloadedJar, download.sha256(), ArtifactStore.coordinate(info.version(), currentMcVersion), ArtifactStore.urlCoordinate(sourceUrl));
+            } catch (IOException e) {
+                Logger.warn("Downloaded jar failed validation: " + e.getMessage());
+                try {
+                    Files.deleteIfExists(downloadedJar);
+                } catch (IOException ignored) {
+                    // Left for the next download to replace
                 }
+                notify(userID, "The downloaded jar is not a valid Cobblemon " + downloadedVersion + " jar: " + e.getMessage() + ". Update aborted.");
+                return null;
+            }
 
-                Files.move(modsDir.resolve("cobblemon-latest.jar"), newJarPath, StandardCopyOption.REPLACE_EXISTING);
-
-                this.sendDiscordDM(userID, "Downloaded and replaced Cobblemon with version: " + latestVersion);
-                this.sendDiscordDM(userID, "Rebooting the Minecraft server to apply the update...");
-                try { Thread.sleep(5000); } catch (InterruptedException e) { /*ignore*/ }
-                MinecraftServer server = Cobblemonupdater.getServer();
-                if (server != null) server.halt(true);
-            } catch (Exception e) {
+            String newJarName = "Cobblemon-fabric-" + normalizeVersion(downloadedVersion) + "+" + currentMcVersion + ".jar";
+            Path stagedJar = downloadedJar.resolveSibling(newJarName);
+            try {
+                Files.move(downloadedJar, stagedJar, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
                 Logger.log(e);
-                this.sendDiscordDM(userID, "Failed to replace Cobblemon jar.");
+                notify(userID, "Failed to stage the Cobblemon jar. Update aborted.");
+                return null;
             }
-        } else {
-            this.sendDiscordDM(userID, "Could not download the latest Cobblemon jar from any source.");
+            StagedUpdate staged = new StagedUpdate(downloadedVersion, useSnapshots, stagedJar, newJarName, System.currentTimeMillis());
+            if (!ignoreMcVersion) {
+                StagedUpdate previous = stagedUpdates.put(useSnapshots, staged);
+                if (previous != null && !previous.file().equals(stagedJar)) {
+                    try {
+                        Files.deleteIfExists(previous.file());
+                    } catch (IOException e) {
+                        Logger.debug(() -> "Failed to delete the superseded staged jar: " + e.getMessage());
+                    }
+                }
+            }
+            return staged;
         }
     }
 
-    public void updateCobblemonFromUrl(long userID, String jarUrl) {
+    /**
+     * Swap a staged jar in and restart the server
+     *
+     * @param userID The user to report to
+     * @param staged The staged update
+     */
+    private void applyUpdate(long userID, StagedUpdate staged) {
         try {
-            // Step 1: Download the HTML page
-            HttpURLConnection conn = (HttpURLConnection) new URL(jarUrl).openConnection();
-            conn.setRequestProperty("User-Agent", "Mozilla/5.0");
-            int responseCode = conn.getResponseCode();
-            String contentType = conn.getContentType();
-            Logger.log("Initial URL: " + jarUrl);
-            Logger.log("HTTP response code: " + responseCode);
-            Logger.log("Content-Type: " + contentType);
-
-            if (responseCode != 200 || (contentType != null && !contentType.contains("html"))) {
-                this.sendDiscordDM(userID, "Failed to fetch artifact page: invalid response.");
-                return;
+            synchronized (stagingLock) {
+                stagedUpdates.values().remove(staged);
+                jarSwapper().swap(staged.file(), staged.fileName());
             }
 
-            // Step 2: Parse HTML for the raw artifact download link
-            String html;
-            try (BufferedReader reader = new BufferedReader(new InputStreamReader(conn.getInputStream()))) {
-                StringBuilder sb = new StringBuilder();
-                String line;
-                while ((line = reader.readLine()) != null) sb.append(line);
-                html = sb.toString();
-            }
-            Pattern p = Pattern.compile("href=\"([^\"]+/artifacts/raw/[^\"]+\\.jar[^\"]*)\"");
-            Matcher m = p.matcher(html);
-            String rawHref = null;
-            while (m.find()) {
-                String candidate = m.group(1);
-                if (candidate.contains("/artifacts/raw/")) {
-                    rawHref = candidate;
-                    break;
-                }
-            }
-            if (rawHref == null) {
-                Logger.log("Could not find raw artifact link in HTML.");
-                this.sendDiscordDM(userID, "Could not find the JAR download link on the artifact page.");
-                return;
-            }
+            this.sendDiscordDM(userID, "Downloaded and replaced Cobblemon with version: " + staged.version());
+            scheduleRestart(userID, "Cobblemon update to " + staged.version());
+        } catch (Exception e) {
+            Logger.log(e);
+            this.sendDiscordDM(userID, "Failed to replace Cobblemon jar.");
+        }
+    }
 
-            // Step 3: Build the absolute URL
-            URL base = new URL(jarUrl);
-            String rawUrl = new URL(base, rawHref).toString();
-            Logger.log("Resolved raw artifact URL: " + rawUrl);
-
-            // Step 4: Download the JAR (only once)
-            HttpURLConnection rawConn = (HttpURLConnection) new URL(rawUrl).openConnection();
-            rawConn.setRequestProperty("User-Agent", "Mozilla/5.0");
-            int rawCode = rawConn.getResponseCode();
-            String rawType = rawConn.getContentType();
-            Logger.log("Raw JAR HTTP response code: " + rawCode);
-            Logger.log("Raw JAR Content-Type: " + rawType);
-
-            if (rawCode != 200 || (rawType != null && !rawType.contains("jar") && !rawType.contains("octet-stream"))) {
-                this.sendDiscordDM(userID, "Failed to download JAR: invalid response from raw artifact URL.");
-                return;
-            }
+    /**
+     * Post a health report to the configured channel every healthReportIntervalMinutes, if set
+     */
+    private void scheduleHealthReports() {
+        TickSampler sampler = Cobblemonupdater.tickSampler;
+        Config config = config();
+        if (sampler == null || config.channelID == null || config.channelID.isEmpty())
+            return;
+        sampler.scheduleReports(config.healthReportIntervalMinutes, () ->
+                this.broadcast("Server health", sampler.report(getCurrentCobblemonVersion()), config.channelID, false, Color.BLUE));
+    }
 
-            String fileName = rawUrl.substring(rawUrl.lastIndexOf('/') + 1);
-            int jarIndex = fileName.indexOf(".jar");
-            if (jarIndex != -1) {
-                fileName = fileName.substring(0, jarIndex + 4);
-            }
-            Path modsDir = Paths.get("mods");
-            Files.createDirectories(modsDir);
-            Path jarFile = modsDir.resolve(fileName);
-            try (InputStream in = rawConn.getInputStream()) {
-                Files.copy(in, jarFile, StandardCopyOption.REPLACE_EXISTING);
+    /**
+     * Hand the restart that applies a jar swap to the restart scheduler
+     *
+     * @param userID The user to keep informed
+     * @param reason Why the server restarts, shown to players
+     */
+    private void scheduleRestart(long userID, String reason) {
+        RestartScheduler scheduler = Cobblemonupdater.restartScheduler;
+        if (scheduler == null) {
+            this.sendDiscordDM(userID, "Rebooting the Minecraft server to apply the update...");
+            MinecraftServer server = Cobblemonupdater.getServer();
+            if (server != null) server.halt(false);
+            return;
+        }
+        this.sendDiscordDM(userID, scheduler.request(reason, message -> this.sendDiscordDM(userID, message)));
+    }
+
+    /**
+     * DM a user about an update, background work has no user and only logs
+     *
+     * @param userID  The user, or 0 for none
+     * @param message The message
+     */
+    private void notify(long userID, String message) {
+        if (userID != 0)
+            this.sendDiscordDM(userID, message);
+        else Logger.log(message);
+    }
+
+    /**
+     * Whether a link on an artifact page points at the raw jar download
+     *
+     * @param href The link
+     * @return Whether it is a raw artifact jar link
+     */
+    private static boolean isRawArtifactLink(String href) {
+        int rawIndex = href.indexOf("/artifacts/raw/");
+        return rawIndex > 0 && href.indexOf(".jar", rawIndex + "/artifacts/raw/".length() + 1) > 0;
+    }
+
+    /**
+     * Download the jar an artifact page links to
+     *
+     * @param userID  The user to report to
+     * @param jarUrl  The artifact page
+     * @param dir     The directory to download into
+     * @return The finished download, or null if it failed and the user was told why
+     * @throws IOException If the page could not be fetched
+     */
+    private Downloader.Result downloadFromArtifactPage(long userID, String jarUrl, Path dir) throws IOException {
+        // Step 1: Download the HTML page
+        HttpResponse<InputStream> page = http().send(http().request(jarUrl, true).build(), HttpResponse.BodyHandlers.ofInputStream());
+        int responseCode = page.statusCode();
+        String contentType = page.headers().firstValue("Content-Type").orElse(null);
+        Logger.log("Initial URL: " + jarUrl);
+        Logger.log("HTTP response code: " + responseCode);
+        Logger.log("Content-Type: " + contentType);
+
+        if (responseCode != 200 || (contentType != null && !contentType.contains("html"))) {
+            page.body().close();
+            this.sendDiscordDM(userID, "Failed to fetch artifact page: invalid response.");
+            return null;
+        }
+
+        // Step 2: Parse HTML for the raw artifact download link
+        // Stream the page and stop reading as soon as the link shows up
+        String rawHref;
+        try (Reader reader = new InputStreamReader(HttpService.decode(page), StandardCharsets.UTF_8)) {
+            rawHref = HrefExtractor.findFirst(reader, DiscordBot::isRawArtifactLink);
+        }
+        if (rawHref == null) {
+            Logger.log("Could not find raw artifact link in HTML.");
+            this.sendDiscordDM(userID, "Could not find the JAR download link on the artifact page.");
+            return null;
+        }
+
+        // Step 3: Build the absolute URL
+        URL base = new URL(jarUrl);
+        String rawUrl = new URL(base, rawHref).toString();
+        Logger.log("Resolved raw artifact URL: " + rawUrl);
+
+        String fileName = rawUrl.substring(rawUrl.lastIndexOf('/') + 1);
+        int jarIndex = fileName.indexOf(".jar");
+        if (jarIndex != -1) {
+            fileName = fileName.substring(0, jarIndex + 4);
+        }
+        Path jarFile = dir.resolve(fileName);
+
+        // Step 4: Download the JAR (only once), resuming if the connection drops
+        DownloadProgressMessage progress = progressMessage(userID, "Downloading " + fileName);
+        Downloader.Result download;
+        try {
+            download = downloadTo(rawUrl, jarFile, progress);
+        } catch (Downloader.ChecksumMismatchException e) {
+            Logger.log("Raw JAR did not match its checksum: " + e.getMessage());
+            progress.finish("Checksum mismatch, download discarded");
+            this.sendDiscordDM(userID, "Downloaded JAR did not match its published checksum. Update aborted.");
+            return null;
+        } catch (Downloader.HttpStatusException e) {
+            Logger.log("Raw JAR download failed: " + e.getMessage());
+            progress.finish("Download failed");
+            this.sendDiscordDM(userID, "Failed to download JAR: invalid response from raw artifact URL.");
+            return null;
+        }
+        String rawType = download.contentType();
+        Logger.log("Raw JAR Content-Type: " + rawType);
+
+        if (rawType != null && !rawType.contains("jar") && !rawType.contains("octet-stream")) {
+            Files.deleteIfExists(jarFile);
+            this.sendDiscordDM(userID, "Failed to download JAR: invalid response from raw artifact URL.");
+            return null;
+        }
+        return download;
+    }
+
+    public void updateCobblemonFromUrl(long userID, String jarUrl) {
+        try {
+            Path stagingDir = jarSwapper().getStagingDir();
+            Path jarFile;
+            Downloader.Result download = null;
+
+            // A jar requested from this URL before is still in the artifact store
+            ArtifactStore store = Cobblemonupdater.artifactStore;
+            String urlCoordinate = ArtifactStore.urlCoordinate(jarUrl);
+            ArtifactStore.Entry stored = store != null ? store.find(urlCoordinate) : null;
+            if (stored != null && store.install(urlCoordinate, stagingDir.resolve(stored.fileName)) != null) {
+                jarFile = stagingDir.resolve(stored.fileName);
+                this.sendDiscordDM(userID, "Installing " + stored.fileName + " from the local artifact store.");
+            } else {
+                download = downloadFromArtifactPage(userID, jarUrl, stagingDir);
+                if (download == null)
+                    return;
+                jarFile = download.file();
             }
+            String fileName = jarFile.getFileName().toString();
 
             // Step 5: Validate the JAR from disk
-            try (java.util.jar.JarFile jar = new java.util.jar.JarFile(jarFile.toFile())) {
-                // Validation logic (optional: check manifest, etc.)
-                // Remove old jars except the new one
-                try (DirectoryStream<Path> stream = Files.newDirectoryStream(modsDir, "Cobblemon-fabric-*.jar")) {
-                    for (Path path : stream) {
-                        if (!path.getFileName().toString().equals(fileName)) {
-                            Files.deleteIfExists(path);
-                        }
-                    }
-                }
-                this.sendDiscordDM(userID, "Downloaded and replaced Cobblemon with the specified jar: " + fileName);
-                this.sendDiscordDM(userID, "Rebooting the Minecraft server to apply the update...");
-                try { Thread.sleep(5000); } catch (InterruptedException e) { /*ignore*/ }
-                MinecraftServer server = Cobblemonupdater.getServer();
-                if (server != null) server.halt(true);
-            } catch (Exception e) {
+            ModJarValidator.ModInfo info;
+            try {
+                info = ModJarValidator.validate(jarFile, null, getCurrentMinecraftVersion());
+            } catch (IOException e) {
                 Logger.log("Downloaded file is not a valid jar: " + e.getMessage());
                 Files.deleteIfExists(jarFile);
-                this.sendDiscordDM(userID, "Downloaded file is not a valid Cobblemon jar.");
+                this.sendDiscordDM(userID, "Downloaded file is not a valid Cobblemon jar: " + e.getMessage());
+                return;
             }
+            Logger.log("Validated " + fileName + " as Cobblemon " + info.version());
+            if (store != null && download != null)
+                store.put(jarFile, download.sha256(), urlCoordinate, ArtifactStore.coordinate(info.version(), getCurrentMinecraftVersion()));
+            // Swap it in, the replaced jars are retained for /rollbackcobblemon
+            jarSwapper().swap(jarFile, fileName);
+            this.sendDiscordDM(userID, "Downloaded and replaced Cobblemon with the specified jar: " + fileName + " (Cobblemon " + info.version() + ")");
+            scheduleRestart(userID, "Cobblemon update to " + info.version());
         } catch (Exception e) {
             Logger.log(e);
             this.sendDiscordDM(userID, "Failed to download or replace Cobblemon jar from the specified URL.");
         }
     }
 
+    /**
+     * Restore a retained Cobblemon jar, this never touches the network
+     *
+     * @param userID  The user to report to
+     * @param version The Cobblemon version to restore, or null for the last replaced jar
+     */
+    public void rollbackCobblemon(long userID, String version) {
+        try {
+            JarSwapper.RetainedJar retained = jarSwapper().findRetained(version);
+            if (retained == null) {
+                List<JarSwapper.RetainedJar> available = jarSwapper().getRetained();
+                this.sendDiscordDM(userID, available.isEmpty() ? "There are no retained Cobblemon jars to roll back to." :
+                        "No retained jar for Cobblemon " + version + ". Available: " + String.join(", ", available.stream().map(JarSwapper.RetainedJar::version).toList()));
+                return;
+            }
+            try {
+                ModJarValidator.validate(retained.file(), null, getCurrentMinecraftVersion());
+            } catch (IOException e) {
+                Logger.warn("Retained jar failed validation: " + e.getMessage());
+                this.sendDiscordDM(userID, "The retained jar " + retained.file().getFileName() + " can't be installed: " + e.getMessage());
+                return;
+            }
+            jarSwapper().rollback(retained);
+            this.sendDiscordDM(userID, "Rolled Cobblemon back to version: " + retained.version());
+            scheduleRestart(userID, "Cobblemon rollback to " + retained.version());
+        } catch (Exception e) {
+            Logger.log(e);
+            this.sendDiscordDM(userID, "Failed to roll back the Cobblemon jar.");
+        }
+    }
+
 
 
 
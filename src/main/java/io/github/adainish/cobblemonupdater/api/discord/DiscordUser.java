@@ -2,6 +2,8 @@ package io.github.adainish.cobblemonupdater.api.discord;
 
 import net.dv8tion.jda.api.entities.Guild;
 
+import java.util.concurrent.CompletableFuture;
+
 public class DiscordUser extends AbstractDiscordUser implements IDiscordUser
 {
     public DiscordUser()
@@ -22,9 +24,11 @@ public class DiscordUser extends AbstractDiscordUser implements IDiscordUser
      * Check if the player is linked to a Minecraft account
      * @param guild The guild to check the role in
      * @param roleID The role ID to check
-     * @return Whether the player has the role
+     * @return Future completed with whether the player has the role
      */
-    public boolean hasRole(Guild guild, Long roleID) {
-        return guild.getMemberById(this.discordID()).getRoles().contains(guild.getRoleById(roleID));
+    public CompletableFuture<Boolean> hasRole(Guild guild, Long roleID) {
+        // Members aren't cached with the lean profile
+        return guild.retrieveMemberById(this.discordID()).submit()
+                .thenApply(member -> member.getRoles().stream().anyMatch(role -> role.getIdLong() == roleID));
     }
 }
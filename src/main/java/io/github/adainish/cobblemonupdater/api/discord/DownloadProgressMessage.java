@@ -0,0 +1,107 @@
+package io.github.adainish.cobblemonupdater.api.discord;
+
+import io.github.adainish.cobblemonupdater.api.Logger;
+import io.github.adainish.cobblemonupdater.api.download.DownloadProgress;
+import io.github.adainish.cobblemonupdater.api.download.ProgressListener;
+import net.dv8tion.jda.api.entities.Message;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Reports download progress to a user through a single direct message that is edited as the download goes,
+ * rather than sending a new message for every update. Edits are throttled to stay clear of Discord's rate limits.
+ *
+ * @Author Adainish
+ */
+public class DownloadProgressMessage implements ProgressListener
+{
+    private final AbstractDiscordBot bot;
+    private final long userId;
+    private final String title;
+    private final long intervalMillis;
+    private CompletableFuture<Message> message;
+    /**
+     * The sent message, set once the send completed
+     */
+    private Message sent;
+    private long lastUpdate;
+    private String lastText;
+    private String pendingText;
+    private boolean editing;
+
+    /**
+     * @param bot The bot to send the message with
+     * @param userId The user to report to
+     * @param title First line of the message, e.g. what is being downloaded
+     * @param intervalMillis Minimum time between two edits
+     */
+    public DownloadProgressMessage(AbstractDiscordBot bot, long userId, String title, long intervalMillis) {
+        this.bot = bot;
+        this.userId = userId;
+        this.title = title;
+        this.intervalMillis = intervalMillis;
+    }
+
+    @Override
+    public void onProgress(DownloadProgress progress) {
+        long now = System.currentTimeMillis();
+        if (!progress.complete() && now - this.lastUpdate < this.intervalMillis)
+            return;
+        this.lastUpdate = now;
+        update(this.title + "\n" + progress.format());
+    }
+
+    /**
+     * Replace the progress with a final status, the message is sent if no progress was reported yet
+     * @param status The status line
+     */
+    public void finish(String status) {
+        update(this.lastText != null ? this.title + "\n" + status : status);
+    }
+
+    private synchronized void update(String text) {
+        if (text.equals(this.lastText))
+            return;
+        this.lastText = text;
+        if (this.message == null) {
+            this.message = this.bot.submitDiscordDM(this.userId, text);
+            this.message.whenComplete((sent, throwable) -> {
+                if (throwable != null)
+                    Logger.warn("Failed to send download progress to user " + this.userId + ": " + throwable.getMessage());
+                else onSent(sent);
+            });
+            return;
+        }
+        // Only the newest text matters, it is picked up once the message exists and the edit before it is done
+        this.pendingText = text;
+        if (this.sent != null && !this.editing)
+            editNext();
+    }
+
+    /**
+     * The message exists, edits start from here so update() can't race this callback into a second edit
+     */
+    private synchronized void onSent(Message sent) {
+        this.sent = sent;
+        if (!this.editing)
+            editNext();
+    }
+
+    /**
+     * Send the newest pending text, one edit at a time so a late edit can never overwrite a newer one
+     */
+    private synchronized void editNext() {
+        Message sent = this.sent;
+        if (sent == null || this.pendingText == null) {
+            this.editing = false;
+            return;
+        }
+        String text = this.pendingText;
+        this.pendingText = null;
+        this.editing = true;
+        sent.editMessage(text).queue(edited -> editNext(), failure -> {
+            Logger.debug(() -> "Failed to edit download progress: " + failure.getMessage());
+            editNext();
+        });
+    }
+}
@@ -2,8 +2,10 @@ package io.github.adainish.cobblemonupdater.api.discord;
 
 import net.dv8tion.jda.api.JDA;
 import net.dv8tion.jda.api.entities.Guild;
+import net.dv8tion.jda.api.entities.channel.concrete.PrivateChannel;
 
 import java.awt.*;
+import java.util.concurrent.CompletableFuture;
 
 public interface IDiscordBot
 {
@@ -29,4 +31,5 @@ public interface IDiscordBot
     void broadcast(String title, String message, String channel, boolean pingEveryone);
     void broadcast(String title, String message, String channel, boolean pingEveryone, Color color);
     Guild getGuild();
+    CompletableFuture<PrivateChannel> openPrivateChannel(long userId);
 }
@@ -2,13 +2,15 @@ package io.github.adainish.cobblemonupdater.api.discord;
 
 import net.dv8tion.jda.api.entities.Guild;
 
+import java.util.concurrent.CompletableFuture;
+
 public interface IDiscordUser
 {
     long discordID();
-    String discordName(IDiscordBot bot);
-    String discordTag(IDiscordBot bot);
-    String discordAvatar(IDiscordBot bot);
-    boolean isBot(IDiscordBot bot);
+    CompletableFuture<String> discordName(IDiscordBot bot);
+    CompletableFuture<String> discordTag(IDiscordBot bot);
+    CompletableFuture<String> discordAvatar(IDiscordBot bot);
+    CompletableFuture<Boolean> isBot(IDiscordBot bot);
     void sendPrivateMessage(IDiscordBot bot, String message);
     void sendPrivateMessage(IDiscordBot bot, String message, String channel);
     void sendPrivateMessage(IDiscordBot bot, String message, long channel);
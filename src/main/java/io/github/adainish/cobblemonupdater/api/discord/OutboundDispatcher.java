@@ -0,0 +1,210 @@
+package io.github.adainish.cobblemonupdater.api.discord;
+
+import io.github.adainish.cobblemonupdater.api.Logger;
+import io.github.adainish.cobblemonupdater.api.metrics.Counter;
+import io.github.adainish.cobblemonupdater.api.metrics.Metrics;
+import net.dv8tion.jda.api.entities.Message;
+import net.dv8tion.jda.api.entities.MessageEmbed;
+import net.dv8tion.jda.api.entities.channel.middleman.MessageChannel;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Queues outgoing embeds per channel and sends them in batches.
+ * Embeds queued within the coalescing window go out together, up to 10 per message, and each channel only has one
+ * request in flight at a time. A burst of notifications therefore costs a few requests that wait in their
+ * rate limit bucket one after the other, instead of many requests racing into it.
+ *
+ * @Author Adainish
+ */
+public class OutboundDispatcher
+{
+    private static final Counter EMBEDS = Metrics.counter("cobblemonupdater_discord_embeds_total",
+            "Embeds handed to the dispatcher by outcome", "outcome");
+    private static final Counter SENDS = Metrics.counter("cobblemonupdater_discord_sends_total",
+            "Messages the dispatcher sent, each carrying up to 10 embeds");
+
+    private record Pending(MessageEmbed embed, CompletableFuture<Void> future)
+    {
+    }
+
+    /**
+     * The queue of one channel
+     */
+    private static class Route
+    {
+        private final String channelID;
+        private final ArrayDeque<Pending> queue = new ArrayDeque<>();
+        /**
+         * Whether a flush is scheduled or a send is in flight
+         */
+        private boolean busy;
+
+        private Route(String channelID) {
+            this.channelID = channelID;
+        }
+    }
+
+    private final Function<String, MessageChannel> channels;
+    private final Map<String, Route> routes = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "CobblemonUpdater-DiscordOutbound");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile long coalesceMillis;
+    private volatile boolean closed;
+
+    /**
+     * @param channels Resolves a channel ID to the channel to send to, null if it is not available
+     * @param coalesceMillis How long to collect embeds before the first send to an idle channel
+     */
+    public OutboundDispatcher(Function<String, MessageChannel> channels, long coalesceMillis) {
+        this.channels = channels;
+        this.coalesceMillis = Math.max(0, coalesceMillis);
+    }
+
+    public void setCoalesceMillis(long coalesceMillis) {
+        this.coalesceMillis = Math.max(0, coalesceMillis);
+    }
+
+    /**
+     * Queue an embed for a channel
+     * @param channelID The channel to send to
+     * @param embed The embed
+     * @return A future completed once the embed was delivered, failed if it could not be
+     */
+    public CompletableFuture<Void> send(String channelID, MessageEmbed embed) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        if (closed) {
+            fail(List.of(new Pending(embed, future)), channelID, new IllegalStateException("The Discord bot is shutting down"));
+            return future;
+        }
+        Route route = routes.computeIfAbsent(channelID, Route::new);
+        boolean schedule;
+        synchronized (route) {
+            route.queue.add(new Pending(embed, future));
+            schedule = !route.busy;
+            route.busy = true;
+        }
+        if (schedule) {
+            try {
+                executor.schedule(() -> flush(route), coalesceMillis, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                abandon(route, e);
+            }
+        }
+        return future;
+    }
+
+    private void flush(Route route) {
+        List<Pending> batch = new ArrayList<>(Message.MAX_EMBED_COUNT);
+        int length = 0;
+        synchronized (route) {
+            // Discord also caps the combined length of the embeds in one message
+            while (batch.size() < Message.MAX_EMBED_COUNT && !route.queue.isEmpty()) {
+                int next = route.queue.peek().embed().getLength();
+                if (!batch.isEmpty() && length + next > MessageEmbed.EMBED_MAX_LENGTH_BOT)
+                    break;
+                batch.add(route.queue.poll());
+                length += next;
+            }
+            if (batch.isEmpty()) {
+                route.busy = false;
+                return;
+            }
+        }
+        try {
+            MessageChannel channel = channels.apply(route.channelID);
+            if (channel == null)
+                throw new IllegalStateException("The channel is not available");
+            SENDS.inc();
+            channel.sendMessageEmbeds(batch.stream().map(Pending::embed).toList()).queue(message -> {
+                EMBEDS.labels("delivered").inc(batch.size());
+                batch.forEach(pending -> pending.future().complete(null));
+                next(route);
+            }, failure -> {
+                fail(batch, route.channelID, failure);
+                next(route);
+            });
+        } catch (RuntimeException e) {
+            // Missing permissions are thrown before anything is sent
+            fail(batch, route.channelID, e);
+            next(route);
+        }
+    }
+
+    /**
+     * Send what was queued while the last batch was in flight, so JDA's rate limiter only holds one request per channel
+     */
+    private void next(Route route) {
+        synchronized (route) {
+            if (route.queue.isEmpty()) {
+                route.busy = false;
+                route.notifyAll();
+                return;
+            }
+        }
+        try {
+            executor.execute(() -> flush(route));
+        } catch (RejectedExecutionException e) {
+            abandon(route, e);
+        }
+    }
+
+    private void abandon(Route route, Exception reason) {
+        List<Pending> left;
+        synchronized (route) {
+            left = new ArrayList<>(route.queue);
+            route.queue.clear();
+            route.busy = false;
+            route.notifyAll();
+        }
+        if (!left.isEmpty())
+            fail(left, route.channelID, reason);
+    }
+
+    private static void fail(List<Pending> batch, String channelID, Throwable failure) {
+        EMBEDS.labels("failed").inc(batch.size());
+        Logger.warn("Failed to deliver " + batch.size() + " Discord message(s) to channel " + channelID + ": " + failure.getMessage());
+        batch.forEach(pending -> pending.future().completeExceptionally(failure));
+    }
+
+    /**
+     * Stop accepting embeds and wait for everything queued to be delivered, embeds still queued at the deadline fail
+     * @param timeoutMillis How long to wait
+     * @return Whether everything was delivered in time
+     */
+    public boolean drain(long timeoutMillis) {
+        closed = true;
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        boolean drained = true;
+        try {
+            for (Route route : routes.values()) {
+                synchronized (route) {
+                    long remaining;
+                    while (route.busy && (remaining = deadline - System.currentTimeMillis()) > 0)
+                        route.wait(remaining);
+                    drained &= !route.busy;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            drained = false;
+        }
+        executor.shutdownNow();
+        IllegalStateException reason = new IllegalStateException("Not delivered before the Discord bot shut down");
+        routes.values().forEach(route -> abandon(route, reason));
+        return drained;
+    }
+}
@@ -0,0 +1,99 @@
+package io.github.adainish.cobblemonupdater.api.discord;
+
+import net.dv8tion.jda.api.JDA;
+import net.dv8tion.jda.api.entities.channel.concrete.PrivateChannel;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers the DM channel of each user the bot messaged, so following messages go straight to the channel.
+ * Without it every DM costs a user lookup and an open channel request on top of the message itself.
+ * The cache keeps the most recently used channels up to a limit and forgets them after a while.
+ *
+ * @Author Adainish
+ */
+public class PrivateChannelCache
+{
+    private record Entry(PrivateChannel channel, long expiresAt)
+    {
+    }
+
+    private final int maxEntries;
+    private final long ttlMillis;
+    private final Map<Long, Entry> entries;
+    /**
+     * Channels being opened, so messages sent in a row share one request
+     */
+    private final Map<Long, CompletableFuture<PrivateChannel>> opening = new ConcurrentHashMap<>();
+
+    /**
+     * @param maxEntries How many channels to remember
+     * @param ttlMillis How long to remember a channel for
+     */
+    public PrivateChannelCache(int maxEntries, long ttlMillis) {
+        this.maxEntries = Math.max(1, maxEntries);
+        this.ttlMillis = ttlMillis;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Entry> eldest) {
+                return size() > PrivateChannelCache.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Get the DM channel of a user, opening it if it is not cached
+     * @param jda The JDA instance to open the channel with
+     * @param userId ID of the user
+     * @return Future completed with the channel
+     */
+    public CompletableFuture<PrivateChannel> open(JDA jda, long userId) {
+        PrivateChannel cached = get(userId);
+        if (cached != null)
+            return CompletableFuture.completedFuture(cached);
+        CompletableFuture<PrivateChannel> mine = new CompletableFuture<>();
+        CompletableFuture<PrivateChannel> existing = opening.putIfAbsent(userId, mine);
+        if (existing != null)
+            return existing;
+        // Opening by ID skips the user lookup
+        jda.openPrivateChannelById(userId).submit().whenComplete((channel, failure) -> {
+            if (channel != null)
+                put(userId, channel);
+            opening.remove(userId, mine);
+            if (failure != null)
+                mine.completeExceptionally(failure);
+            else mine.complete(channel);
+        });
+        return mine;
+    }
+
+    /**
+     * Forget the channel of a user, e.g. after sending to it failed
+     * @param userId ID of the user
+     */
+    public synchronized void invalidate(long userId) {
+        entries.remove(userId);
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    private synchronized PrivateChannel get(long userId) {
+        Entry entry = entries.get(userId);
+        if (entry == null)
+            return null;
+        if (System.currentTimeMillis() >= entry.expiresAt()) {
+            entries.remove(userId);
+            return null;
+        }
+        return entry.channel();
+    }
+
+    private synchronized void put(long userId, PrivateChannel channel) {
+        entries.put(userId, new Entry(channel, System.currentTimeMillis() + ttlMillis));
+    }
+}
@@ -0,0 +1,183 @@
+package io.github.adainish.cobblemonupdater.api.discord;
+
+import com.google.gson.Gson;
+import io.github.adainish.cobblemonupdater.api.Logger;
+import io.github.adainish.cobblemonupdater.config.Adapters;
+import net.dv8tion.jda.api.JDA;
+import net.dv8tion.jda.api.Permission;
+import net.dv8tion.jda.api.entities.Guild;
+import net.dv8tion.jda.api.interactions.commands.DefaultMemberPermissions;
+import net.dv8tion.jda.api.interactions.commands.OptionType;
+import net.dv8tion.jda.api.interactions.commands.build.CommandData;
+import net.dv8tion.jda.api.interactions.commands.build.Commands;
+import net.dv8tion.jda.api.interactions.commands.build.OptionData;
+import net.dv8tion.jda.api.requests.restaction.CommandListUpdateAction;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * The slash commands of the bot, declared once and synced to Discord in a single bulk update.
+ * A hash of the definitions is persisted after each sync, so restarts and reloads with unchanged commands
+ * don't make any command requests.
+ *
+ * @Author Adainish
+ */
+public class SlashCommands
+{
+    private static final String SYNC_FILE = "command-sync.json";
+
+    /**
+     * Commands that install jars or hold back a restart are limited to members who can manage the server
+     */
+    private static final DefaultMemberPermissions ADMIN = DefaultMemberPermissions.enabledFor(Permission.MANAGE_SERVER);
+
+    public static final List<CommandData> COMMANDS = List.of(
+            Commands.slash("cobblemonstatus", "Check the Cobblemon version status")
+                    .addOption(OptionType.BOOLEAN, "use_snapshots", "Use snapshot builds instead of releases", false),
+            Commands.slash("setupdateurl", "Set the Cobblemon update URL")
+                    .addOption(OptionType.STRING, "url", "The update URL", true)
+                    .setDefaultPermissions(ADMIN),
+            Commands.slash("updatespecified", "Update Cobblemon with a specific jar from a URL")
+                    .addOption(OptionType.STRING, "url", "Direct URL to the jar", true)
+                    .setDefaultPermissions(ADMIN),
+            Commands.slash("updatecobblemon", "Manually trigger a Cobblemon update")
+                    .addOption(OptionType.BOOLEAN, "ignore_mc_version", "Ignore MC version and grab highest Cobblemon version", false)
+                    .addOption(OptionType.BOOLEAN, "use_snapshots", "Use snapshot builds instead of releases", false)
+                    .setDefaultPermissions(ADMIN),
+            Commands.slash("serverhealth", "Show tick times, memory, loaded chunks and players"),
+            Commands.slash("discordfootprint", "Show what the Discord bot keeps cached and its estimated heap"),
+            Commands.slash("deferrestart", "Postpone the pending server restart")
+                    .addOptions(new OptionData(OptionType.INTEGER, "minutes", "How many minutes to postpone it by", true)
+                            .setRequiredRange(1, 1440))
+                    .setDefaultPermissions(ADMIN),
+            Commands.slash("cancelrestart", "Cancel the pending server restart, the update applies on the next restart")
+                    .setDefaultPermissions(ADMIN),
+            Commands.slash("rollbackcobblemon", "Restore a previously installed Cobblemon jar")
+                    .addOption(OptionType.STRING, "version", "The Cobblemon version to restore, the last replaced jar if empty", false)
+                    .setDefaultPermissions(ADMIN)
+    );
+
+    /**
+     * What was last synced, stored in the config directory
+     */
+    public static class SyncState
+    {
+        public String scope;
+        public String hash;
+    }
+
+    private final File file;
+
+    /**
+     * @param dir Directory to keep the sync state in
+     */
+    public SlashCommands(File dir) {
+        this.file = new File(dir, SYNC_FILE);
+    }
+
+    /**
+     * Register the commands unless the same definitions were already synced to the same scope
+     * @param jda The ready JDA instance
+     * @param guildID The guild to register the commands in, or empty to register them globally
+     */
+    public void sync(JDA jda, String guildID) {
+        Guild guild = null;
+        if (guildID != null && !guildID.isEmpty()) {
+            guild = jda.getGuildById(guildID);
+            // Registering globally instead would hand the commands to every guild the bot is in
+            if (guild == null) {
+                Logger.warn("The bot is not in guild " + guildID + ", the slash commands were not registered");
+                return;
+            }
+        }
+        String scope = jda.getSelfUser().getApplicationId() + (guild != null ? "/guild/" + guild.getId() : "/global");
+        String hash = hash();
+        SyncState previous = read();
+        if (previous != null && scope.equals(previous.scope) && hash.equals(previous.hash)) {
+            Logger.debug("Slash commands are up to date, skipping the sync");
+            return;
+        }
+        CommandListUpdateAction update = guild != null ? guild.updateCommands() : jda.updateCommands();
+        Logger.log("Registering " + COMMANDS.size() + " slash commands " + (guild != null ? "in guild " + guild.getName() : "globally"));
+        update.addCommands(COMMANDS).queue(commands -> {
+            SyncState state = new SyncState();
+            state.scope = scope;
+            state.hash = hash;
+            write(state);
+            if (previous != null && previous.scope != null && !scope.equals(previous.scope))
+                clear(jda, previous.scope);
+        }, failure -> Logger.warn("Failed to register the slash commands: " + failure.getMessage()));
+    }
+
+    /**
+     * Remove the commands from the scope they were registered in before, so they don't show up twice
+     */
+    private static void clear(JDA jda, String scope) {
+        String prefix = jda.getSelfUser().getApplicationId() + "/";
+        if (!scope.startsWith(prefix))
+            return;
+        String target = scope.substring(prefix.length());
+        if (target.equals("global")) {
+            jda.updateCommands().queue();
+        } else if (target.startsWith("guild/")) {
+            Guild guild = jda.getGuildById(target.substring("guild/".length()));
+            if (guild != null)
+                guild.updateCommands().queue();
+        }
+    }
+
+    /**
+     * @return The SHA-256 of the serialized command definitions
+     */
+    public static String hash() {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (CommandData command : COMMANDS) {
+                digest.update(command.toData().toJson());
+                digest.update((byte) '\n');
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private SyncState read() {
+        if (!file.exists())
+            return null;
+        Gson gson = Adapters.PRETTY_MAIN_GSON;
+        try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+            return gson.fromJson(reader, SyncState.class);
+        } catch (Exception e) {
+            Logger.warn("Failed to read the command sync state, the commands will be registered again");
+            return null;
+        }
+    }
+
+    private void write(SyncState state) {
+        File dir = file.getParentFile();
+        if (dir == null)
+            return;
+        dir.mkdirs();
+        Gson gson = Adapters.PRETTY_MAIN_GSON;
+        File temp = new File(dir, SYNC_FILE + ".tmp");
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(temp), StandardCharsets.UTF_8)) {
+            gson.toJson(state, writer);
+        } catch (IOException e) {
+            Logger.log(e);
+            return;
+        }
+        try {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Logger.log(e);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package io.github.adainish.cobblemonupdater.api.download;
+
+/**
+ * A checksum published next to an artifact, like the .sha1 files Maven repositories serve
+ *
+ * @param algorithm The {@link java.security.MessageDigest} algorithm name
+ * @param hex       The expected digest in lowercase hex
+ * @Author Adainish
+ */
+public record Checksum(String algorithm, String hex)
+{
+    /**
+     * Sidecar file extensions and their algorithms, strongest first
+     */
+    static final String[][] SIDECARS = {
+            {".sha256", "SHA-256"},
+            {".sha1", "SHA-1"},
+            {".md5", "MD5"}
+    };
+
+    /**
+     * Parse the body of a sidecar file, which holds the digest optionally followed by the file name
+     * @param algorithm The algorithm of the sidecar
+     * @param body The sidecar body
+     * @return The checksum, or null if the body is not a digest of the right length
+     */
+    public static Checksum parse(String algorithm, String body) {
+        String trimmed = body.trim();
+        int end = 0;
+        while (end < trimmed.length() && !Character.isWhitespace(trimmed.charAt(end)))
+            end++;
+        String hex = trimmed.substring(0, end).toLowerCase();
+        if (hex.length() != hexLength(algorithm))
+            return null;
+        for (int i = 0; i < hex.length(); i++) {
+            if (Character.digit(hex.charAt(i), 16) < 0)
+                return null;
+        }
+        return new Checksum(algorithm, hex);
+    }
+
+    public boolean matches(String actualHex) {
+        return this.hex.equalsIgnoreCase(actualHex);
+    }
+
+    private static int hexLength(String algorithm) {
+        return switch (algorithm) {
+            case "SHA-256" -> 64;
+            case "SHA-1" -> 40;
+            case "MD5" -> 32;
+            default -> -1;
+        };
+    }
+}
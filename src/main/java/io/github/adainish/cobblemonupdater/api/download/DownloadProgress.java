@@ -0,0 +1,64 @@
+package io.github.adainish.cobblemonupdater.api.download;
+
+/**
+ * A snapshot of a running download
+ *
+ * @param downloadedBytes Bytes written so far, including bytes resumed from an earlier attempt
+ * @param totalBytes      Size of the file, or -1 when the server did not send one
+ * @param bytesPerSecond  Smoothed transfer rate
+ * @param complete        Whether the download has finished
+ * @Author Adainish
+ */
+public record DownloadProgress(long downloadedBytes, long totalBytes, double bytesPerSecond, boolean complete)
+{
+    /**
+     * @return Estimated seconds left, or -1 if it can't be estimated
+     */
+    public long etaSeconds() {
+        if (complete)
+            return 0;
+        if (totalBytes < 0 || bytesPerSecond <= 0)
+            return -1;
+        return (long) Math.ceil((totalBytes - downloadedBytes) / bytesPerSecond);
+    }
+
+    /**
+     * @return Percentage done, or -1 if the size is unknown
+     */
+    public int percent() {
+        if (totalBytes <= 0)
+            return complete ? 100 : -1;
+        return (int) Math.min(100, downloadedBytes * 100 / totalBytes);
+    }
+
+    /**
+     * Format the progress for a chat message, e.g. 12.4 MiB / 40.1 MiB (30%) at 2.1 MiB/s, 13s left
+     * @return The formatted progress
+     */
+    public String format() {
+        StringBuilder builder = new StringBuilder(formatBytes(downloadedBytes));
+        if (totalBytes >= 0)
+            builder.append(" / ").append(formatBytes(totalBytes)).append(" (").append(percent()).append("%)");
+        if (complete)
+            return builder.append(" - done").toString();
+        builder.append(" at ").append(formatBytes((long) bytesPerSecond)).append("/s");
+        long eta = etaSeconds();
+        if (eta >= 0)
+            builder.append(", ").append(formatDuration(eta)).append(" left");
+        return builder.toString();
+    }
+
+    public static String formatBytes(long bytes) {
+        if (bytes < 1024)
+            return bytes + " B";
+        if (bytes < 1024 * 1024)
+            return String.format("%.1f KiB", bytes / 1024.0);
+        return String.format("%.1f MiB", bytes / (1024.0 * 1024.0));
+    }
+
+    private static String formatDuration(long seconds) {
+        if (seconds < 60)
+            return seconds + "s";
+        return (seconds / 60) + "m " + (seconds % 60) + "s";
+    }
+}
@@ -0,0 +1,618 @@
+package io.github.adainish.cobblemonupdater.api.download;
+
+import com.google.gson.Gson;
+import io.github.adainish.cobblemonupdater.api.Logger;
+import io.github.adainish.cobblemonupdater.api.http.HttpService;
+import io.github.adainish.cobblemonupdater.config.Adapters;
+import io.github.adainish.cobblemonupdater.config.Config;
+
+import java.io.*;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Downloads files into a .part file next to the target and resumes it with Range / If-Range after a failure,
+ * so a dropped connection does not mean starting over. The part file and the validators it was downloaded with
+ * are kept when every attempt fails, a later download of the same URL picks up where it stopped.
+ * <p>
+ * With more than one segment configured, servers that accept ranges are downloaded over several connections at once,
+ * each writing its own range into a preallocated part file. Anything else falls back to a single stream, which
+ * resumes from the bytes the segments already wrote in one piece from the start of the file.
+ * <p>
+ * The SHA-256 of the file, and the digest of any .sha256 / .sha1 / .md5 sidecar the server publishes, are computed
+ * while the bytes are written. A file that does not match its sidecar is deleted and never replaces the target.
+ *
+ * @Author Adainish
+ */
+public class Downloader
+{
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final long LISTENER_INTERVAL_MILLIS = 250;
+    private static final String PART_SUFFIX = ".part";
+    private static final String STATE_SUFFIX = ".part.json";
+    /**
+     * Segments smaller than this are not worth an extra connection
+     */
+    private static final long MIN_SEGMENT_BYTES = 1024 * 1024;
+
+    /**
+     * The finished download
+     *
+     * @param file        The downloaded file
+     * @param bytes       Size of the file
+     * @param contentType Content-Type of the last response, or null if there was none
+     * @param resumed     Whether part of the file came from an earlier attempt
+     * @param sha256      SHA-256 of the file in lowercase hex
+     * @param verified    The sidecar checksum the file was verified against, or null if the server published none
+     */
+    public record Result(Path file, long bytes, String contentType, boolean resumed, String sha256, Checksum verified) {
+    }
+
+    /**
+     * What is needed to resume a part file, stored next to it
+     */
+    public static class PartState
+    {
+        public String url;
+        public String etag;
+        public String lastModified;
+        public String contentType;
+        public long totalBytes = -1;
+
+        String validator() {
+            return etag != null && !etag.startsWith("W/") ? etag : lastModified;
+        }
+    }
+
+    private final HttpService http;
+    private final int maxAttempts;
+    private final long backoffMillis;
+    private final int segments;
+
+    /**
+     * @param http The network layer to download with
+     * @param config The loaded config
+     */
+    public Downloader(HttpService http, Config config) {
+        this.http = http;
+        this.maxAttempts = Math.max(1, config.downloadMaxAttempts);
+        this.backoffMillis = Math.max(50, config.httpRetryBackoffMillis);
+        this.segments = Math.max(1, config.downloadSegments);
+    }
+
+    /**
+     * Download a URL to a file, replacing the file once the download is complete
+     * @param url The URL to download
+     * @param target The file to write to
+     * @param listener Receives progress updates
+     * @return The finished download
+     * @throws IOException If every attempt failed, or the server answered with an unexpected status
+     */
+    public Result download(String url, Path target, ProgressListener listener) throws IOException {
+        Path parent = target.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path part = target.resolveSibling(target.getFileName() + PART_SUFFIX);
+        Path stateFile = target.resolveSibling(target.getFileName() + STATE_SUFFIX);
+        PartState state = readState(stateFile, url, part);
+        Checksum expected = fetchChecksum(url);
+        Digests digests = new Digests(expected);
+        // A part file left by a single stream is resumed as is, segmenting it would throw those bytes away
+        if (segments > 1 && state.url == null) {
+            Result result = downloadSegmented(url, target, part, stateFile, state, digests, expected, listener);
+            if (result != null)
+                return result;
+        }
+        boolean resumed = false;
+        IOException lastFailure = null;
+        for (int attempt = 1; attempt <= maxAttempts; attempt++) {
+            if (attempt > 1)
+                sleep(backoffMillis * (attempt - 1));
+            try {
+                resumed |= transfer(url, part, stateFile, state, digests, listener);
+                lastFailure = null;
+                break;
+            } catch (HttpStatusException | InterruptedIOException e) {
+                throw e;
+            } catch (IOException e) {
+                lastFailure = e;
+                Logger.warn("Download of " + url + " failed (attempt " + attempt + " of " + maxAttempts + "): " + e.getMessage());
+            }
+        }
+        if (lastFailure != null)
+            throw lastFailure;
+        return complete(url, part, target, stateFile, state.contentType, resumed, digests, expected, listener);
+    }
+
+    /**
+     * Verify the part file and move it into place
+     */
+    private Result complete(String url, Path part, Path target, Path stateFile, String contentType, boolean resumed,
+                            Digests digests, Checksum expected, ProgressListener listener) throws IOException {
+        digests.finish();
+        String sha256 = digests.sha256Hex();
+        if (expected != null) {
+            String actual = digests.expectedHex();
+            if (!expected.matches(actual)) {
+                // The bytes on disk are bad, resuming them later would only fail again
+                Files.deleteIfExists(part);
+                Files.deleteIfExists(stateFile);
+                throw new ChecksumMismatchException(expected.algorithm() + " of " + url + " is " + actual + " but the repository published " + expected.hex());
+            }
+            Logger.log("Verified the " + expected.algorithm() + " checksum of " + url);
+        }
+        long bytes = Files.size(part);
+        move(part, target);
+        Files.deleteIfExists(stateFile);
+        listener.onProgress(new DownloadProgress(bytes, bytes, 0, true));
+        return new Result(target, bytes, contentType, resumed, sha256, expected);
+    }
+
+    /**
+     * Fetch the strongest checksum sidecar published for a URL
+     * @param url The URL of the file
+     * @return The checksum, or null if the server publishes none
+     */
+    public Checksum fetchChecksum(String url) {
+        for (String[] sidecar : Checksum.SIDECARS) {
+            try {
+                HttpResponse<String> response = http.send(http.request(url + sidecar[0], false).build(), HttpResponse.BodyHandlers.ofString());
+                if (response.statusCode() != 200)
+                    continue;
+                Checksum checksum = Checksum.parse(sidecar[1], response.body());
+                if (checksum != null)
+                    return checksum;
+            } catch (InterruptedIOException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            } catch (IOException e) {
+                Logger.debug(() -> "Failed to fetch " + url + sidecar[0] + ": " + e.getMessage());
+            }
+        }
+        Logger.debug(() -> "No checksum published for " + url);
+        return null;
+    }
+
+    /**
+     * Download over several connections at once
+     * @param state Filled in when a segment failed and the part file keeps the bytes written so far
+     * @return The finished download, or null if the server does not support it or a segment failed
+     */
+    private Result downloadSegmented(String url, Path target, Path part, Path stateFile, PartState state, Digests digests,
+                                     Checksum expected, ProgressListener listener) throws IOException {
+        PartState probe = probe(url);
+        if (probe == null)
+            return null;
+        long length = probe.totalBytes;
+        int count = (int) Math.min(segments, length / MIN_SEGMENT_BYTES);
+        String validator = probe.validator();
+        Logger.debug(() -> "Downloading " + url + " in " + count + " segments");
+
+        ExecutorService executor = Executors.newFixedThreadPool(count, runnable -> {
+            Thread thread = new Thread(runnable, "CobblemonUpdater-Download");
+            thread.setDaemon(true);
+            return thread;
+        });
+        AtomicLong written = new AtomicLong();
+        long[] starts = new long[count];
+        long[] ends = new long[count];
+        // How far each segment got, the next byte it would write
+        AtomicLong[] positions = new AtomicLong[count];
+        List<Future<?>> futures = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(part, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            // Preallocate, so every segment writes into its own region of the file
+            channel.write(ByteBuffer.wrap(new byte[1]), length - 1);
+            long segmentSize = length / count;
+            for (int i = 0; i < count; i++) {
+                long start = i * segmentSize;
+                long end = i == count - 1 ? length - 1 : start + segmentSize - 1;
+                AtomicLong position = new AtomicLong(start);
+                starts[i] = start;
+                ends[i] = end;
+                positions[i] = position;
+                futures.add(executor.submit(() -> {
+                    downloadSegment(url, validator, channel, end, position, written);
+                    return null;
+                }));
+            }
+            RateTracker rate = new RateTracker();
+            long reported = 0;
+            for (Future<?> future : futures) {
+                while (true) {
+                    try {
+                        future.get(LISTENER_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+                        break;
+                    } catch (TimeoutException e) {
+                        long current = written.get();
+                        rate.add(current - reported, System.currentTimeMillis());
+                        reported = current;
+                        listener.onProgress(new DownloadProgress(current, length, rate.bytesPerSecond(), false));
+                    }
+                }
+            }
+            channel.force(false);
+        } catch (ExecutionException e) {
+            futures.forEach(future -> future.cancel(true));
+            Logger.warn("Segmented download of " + url + " failed, falling back to a single stream: " + e.getCause().getMessage());
+            keepPrefix(url, part, stateFile, state, probe, starts, ends, positions);
+            return null;
+        } catch (InterruptedException e) {
+            futures.forEach(future -> future.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while downloading " + url);
+        } finally {
+            executor.shutdownNow();
+        }
+        // Segments arrive out of order, so this is the one mode that hashes in a second pass
+        digests.reset();
+        digests.updateFrom(part, length);
+        return complete(url, part, target, stateFile, probe.contentType, false, digests, expected, listener);
+    }
+
+    /**
+     * Cut the part file down to the bytes written in one piece from its start and store the state to resume it from there.
+     * The channel is closed at this point, so segments that are still winding down can't write past the cut.
+     */
+    private static void keepPrefix(String url, Path part, Path stateFile, PartState state, PartState probe,
+                                   long[] starts, long[] ends, AtomicLong[] positions) throws IOException {
+        long prefix = 0;
+        for (int i = 0; i < positions.length && prefix == starts[i]; i++)
+            prefix = Math.min(positions[i].get(), ends[i] + 1);
+        if (prefix == 0 || probe.validator() == null) {
+            Files.deleteIfExists(part);
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(part, StandardOpenOption.WRITE)) {
+            channel.truncate(prefix);
+        }
+        state.url = probe.url;
+        state.etag = probe.etag;
+        state.lastModified = probe.lastModified;
+        state.contentType = probe.contentType;
+        state.totalBytes = probe.totalBytes;
+        writeState(state, stateFile);
+        long kept = prefix;
+        Logger.debug(() -> "Keeping the first " + DownloadProgress.formatBytes(kept) + " of " + url + " for the single stream");
+    }
+
+    /**
+     * Check whether a server accepts ranges and how large the file is
+     * @return The validators and size, or null if the file can't be downloaded in segments
+     */
+    private PartState probe(String url) {
+        try {
+            HttpRequest request = http.request(url, false).method("HEAD", HttpRequest.BodyPublishers.noBody()).build();
+            HttpResponse<Void> response = http.send(request, HttpResponse.BodyHandlers.discarding());
+            if (response.statusCode() != 200)
+                return null;
+            if (!response.headers().firstValue("Accept-Ranges").orElse("none").equalsIgnoreCase("bytes"))
+                return null;
+            long length = response.headers().firstValueAsLong("Content-Length").orElse(-1);
+            if (length < MIN_SEGMENT_BYTES * 2)
+                return null;
+            PartState state = new PartState();
+            state.url = url;
+            state.etag = response.headers().firstValue("ETag").orElse(null);
+            state.lastModified = response.headers().firstValue("Last-Modified").orElse(null);
+            state.contentType = response.headers().firstValue("Content-Type").orElse(null);
+            state.totalBytes = length;
+            return state;
+        } catch (IOException e) {
+            Logger.debug(() -> "Range probe of " + url + " failed: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Download one range with positional writes, resuming the range itself when its connection drops
+     */
+    private void downloadSegment(String url, String validator, FileChannel channel, long end, AtomicLong progress, AtomicLong written) throws IOException {
+        long position = progress.get();
+        IOException lastFailure = null;
+        for (int attempt = 1; attempt <= maxAttempts; attempt++) {
+            if (attempt > 1)
+                sleep(backoffMillis * (attempt - 1));
+            HttpRequest.Builder request = http.request(url, false).header("Range", "bytes=" + position + "-" + end);
+            if (validator != null)
+                request.header("If-Range", validator);
+            try {
+                HttpResponse<InputStream> response = http.sendOnce(request.build(), HttpResponse.BodyHandlers.ofInputStream());
+                try (InputStream in = response.body()) {
+                    if (HttpService.isRetryable(response.statusCode()))
+                        throw new IOException("Retryable response code " + response.statusCode() + " from " + url);
+                    String range = response.headers().firstValue("Content-Range").orElse("");
+                    // A 200 here means the file changed or ranges stopped working, either way the segments can't be combined
+                    if (response.statusCode() != 206 || !range.startsWith("bytes " + position + "-"))
+                        throw new HttpStatusException("Server did not return the requested range of " + url + " (" + response.statusCode() + ")");
+                    byte[] buffer = new byte[BUFFER_SIZE];
+                    ByteBuffer wrapped = ByteBuffer.wrap(buffer);
+                    int read;
+                    while (position <= end && (read = in.read(buffer, 0, (int) Math.min(buffer.length, end - position + 1))) != -1) {
+                        wrapped.clear().limit(read);
+                        while (wrapped.hasRemaining())
+                            position += channel.write(wrapped, position);
+                        progress.set(position);
+                        written.addAndGet(read);
+                    }
+                }
+                if (position > end)
+                    return;
+                lastFailure = new EOFException("Segment closed at " + position + " of " + end);
+            } catch (HttpStatusException | InterruptedIOException e) {
+                throw e;
+            } catch (IOException e) {
+                lastFailure = e;
+            }
+            long failedAt = position;
+            String reason = lastFailure.getMessage();
+            Logger.debug(() -> "Segment of " + url + " failed at byte " + failedAt + ": " + reason);
+        }
+        throw lastFailure;
+    }
+
+    /**
+     * Run one attempt, resuming the part file when possible
+     * @return Whether the attempt resumed from existing bytes
+     */
+    private boolean transfer(String url, Path part, Path stateFile, PartState state, Digests digests, ProgressListener listener) throws IOException {
+        long offset = state.url != null && Files.exists(part) ? Files.size(part) : 0;
+        String validator = state.validator();
+        HttpRequest.Builder request = http.request(url, false);
+        if (offset > 0 && validator != null) {
+            request.header("Range", "bytes=" + offset + "-");
+            // If the file changed since the part was written the server sends the whole new file instead
+            request.header("If-Range", validator);
+        } else offset = 0;
+
+        // The attempts in download() resume the part file, retrying inside the network layer as well would multiply them
+        HttpResponse<InputStream> response = http.sendOnce(request.build(), HttpResponse.BodyHandlers.ofInputStream());
+        digests.reset();
+        try (InputStream in = response.body()) {
+            int code = response.statusCode();
+            if (code == 416 && offset > 0 && offset == state.totalBytes) {
+                Logger.debug(() -> "Part file of " + url + " is already complete");
+                digests.updateFrom(part, offset);
+                return true;
+            }
+            if (code == 206 && offset > 0) {
+                String range = response.headers().firstValue("Content-Range").orElse("");
+                if (!range.startsWith("bytes " + offset + "-")) {
+                    resetState(state, stateFile);
+                    throw new IOException("Server answered with an unexpected range: " + range);
+                }
+                Logger.log("Resuming download of " + url + " at " + DownloadProgress.formatBytes(offset));
+                // The digests can't be stored with the part file, so only the resumed bytes are read back
+                digests.updateFrom(part, offset);
+            } else if (code == 200) {
+                offset = 0;
+                state.url = url;
+                state.etag = response.headers().firstValue("ETag").orElse(null);
+                state.lastModified = response.headers().firstValue("Last-Modified").orElse(null);
+                state.contentType = response.headers().firstValue("Content-Type").orElse(null);
+                state.totalBytes = response.headers().firstValueAsLong("Content-Length").orElse(-1);
+                writeState(state, stateFile);
+            } else if (code == 416) {
+                resetState(state, stateFile);
+                throw new IOException("Stored part of " + url + " is no longer valid, starting over");
+            } else if (HttpService.isRetryable(code)) {
+                throw new IOException("Retryable response code " + code + " from " + url);
+            } else {
+                throw new HttpStatusException("Unexpected response code " + code + " from " + url);
+            }
+            write(in, part, offset, state.totalBytes, digests, listener);
+            return offset > 0;
+        }
+    }
+
+    private void write(InputStream in, Path part, long offset, long totalBytes, Digests digests, ProgressListener listener) throws IOException {
+        RateTracker rate = new RateTracker();
+        long written = offset;
+        try (FileChannel channel = FileChannel.open(part, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            channel.truncate(offset);
+            channel.position(offset);
+            byte[] buffer = new byte[BUFFER_SIZE];
+            ByteBuffer wrapped = ByteBuffer.wrap(buffer);
+            long lastNotified = 0;
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                wrapped.clear().limit(read);
+                while (wrapped.hasRemaining())
+                    channel.write(wrapped);
+                digests.update(buffer, read);
+                written += read;
+                long now = System.currentTimeMillis();
+                rate.add(read, now);
+                if (now - lastNotified >= LISTENER_INTERVAL_MILLIS) {
+                    lastNotified = now;
+                    listener.onProgress(new DownloadProgress(written, totalBytes, rate.bytesPerSecond(), false));
+                }
+            }
+        }
+        if (totalBytes >= 0 && written != totalBytes)
+            throw new EOFException("Connection closed after " + written + " of " + totalBytes + " bytes");
+    }
+
+    private static PartState readState(Path stateFile, String url, Path part) {
+        if (Files.exists(stateFile) && Files.exists(part)) {
+            Gson gson = Adapters.PRETTY_MAIN_GSON;
+            try (Reader reader = Files.newBufferedReader(stateFile, StandardCharsets.UTF_8)) {
+                PartState state = gson.fromJson(reader, PartState.class);
+                if (state != null && url.equals(state.url))
+                    return state;
+            } catch (Exception e) {
+                Logger.debug(() -> "Ignoring unreadable download state " + stateFile + ": " + e.getMessage());
+            }
+        }
+        return new PartState();
+    }
+
+    private static void writeState(PartState state, Path stateFile) throws IOException {
+        Gson gson = Adapters.PRETTY_MAIN_GSON;
+        try (Writer writer = Files.newBufferedWriter(stateFile, StandardCharsets.UTF_8)) {
+            gson.toJson(state, writer);
+        }
+    }
+
+    private static void resetState(PartState state, Path stateFile) throws IOException {
+        state.url = null;
+        state.etag = null;
+        state.lastModified = null;
+        state.totalBytes = -1;
+        Files.deleteIfExists(stateFile);
+    }
+
+    private static void move(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static void sleep(long millis) throws InterruptedIOException {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to resume a download");
+        }
+    }
+
+    /**
+     * Smoothed transfer rate, updated once per second
+     */
+    private static class RateTracker
+    {
+        private static final long WINDOW_MILLIS = 1000;
+        private static final double SMOOTHING = 0.3;
+
+        private final long startedAt = System.currentTimeMillis();
+        private long windowStart = startedAt;
+        private long windowBytes;
+        private long totalBytes;
+        private double rate;
+
+        void add(long bytes, long now) {
+            windowBytes += bytes;
+            totalBytes += bytes;
+            long elapsed = now - windowStart;
+            if (elapsed < WINDOW_MILLIS)
+                return;
+            double current = windowBytes * 1000.0 / elapsed;
+            rate = rate == 0 ? current : rate + SMOOTHING * (current - rate);
+            windowStart = now;
+            windowBytes = 0;
+        }
+
+        double bytesPerSecond() {
+            if (rate > 0)
+                return rate;
+            // Until the first window closes the average since the start is all there is
+            long elapsed = Math.max(1, System.currentTimeMillis() - startedAt);
+            return totalBytes * 1000.0 / elapsed;
+        }
+    }
+
+    /**
+     * The digests computed while a file is written, SHA-256 always and the sidecar's algorithm when it differs
+     */
+    private static class Digests
+    {
+        private final MessageDigest sha256;
+        private final MessageDigest expected;
+        private String sha256Hex;
+        private String expectedHex;
+
+        Digests(Checksum checksum) {
+            this.sha256 = create("SHA-256");
+            this.expected = checksum != null && !checksum.algorithm().equals("SHA-256") ? create(checksum.algorithm()) : null;
+        }
+
+        void reset() {
+            sha256Hex = null;
+            expectedHex = null;
+            sha256.reset();
+            if (expected != null)
+                expected.reset();
+        }
+
+        void update(byte[] bytes, int length) {
+            sha256.update(bytes, 0, length);
+            if (expected != null)
+                expected.update(bytes, 0, length);
+        }
+
+        /**
+         * Hash the first bytes of a file
+         */
+        void updateFrom(Path file, long length) throws IOException {
+            try (InputStream in = Files.newInputStream(file)) {
+                byte[] buffer = new byte[BUFFER_SIZE];
+                long remaining = length;
+                int read;
+                while (remaining > 0 && (read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining))) != -1) {
+                    update(buffer, read);
+                    remaining -= read;
+                }
+            }
+        }
+
+        void finish() {
+            sha256Hex = HexFormat.of().formatHex(sha256.digest());
+            expectedHex = expected != null ? HexFormat.of().formatHex(expected.digest()) : sha256Hex;
+        }
+
+        String sha256Hex() {
+            return sha256Hex;
+        }
+
+        /**
+         * @return The digest in the algorithm of the sidecar checksum
+         */
+        String expectedHex() {
+            return expectedHex;
+        }
+
+        private static MessageDigest create(String algorithm) {
+            try {
+                return MessageDigest.getInstance(algorithm);
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(algorithm + " is not available", e);
+            }
+        }
+    }
+
+    /**
+     * A downloaded file that does not match the checksum the repository published
+     */
+    public static class ChecksumMismatchException extends IOException
+    {
+        public ChecksumMismatchException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * A response status that retrying or resuming won't fix
+     */
+    public static class HttpStatusException extends IOException
+    {
+        public HttpStatusException(String message) {
+            super(message);
+        }
+    }
+}
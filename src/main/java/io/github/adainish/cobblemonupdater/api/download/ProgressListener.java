@@ -0,0 +1,15 @@
+package io.github.adainish.cobblemonupdater.api.download;
+
+/**
+ * Receives progress updates from the {@link Downloader}.
+ * Updates arrive on the downloading thread, at most a few times per second, and always once more when the download completes.
+ *
+ * @Author Adainish
+ */
+@FunctionalInterface
+public interface ProgressListener
+{
+    ProgressListener NONE = progress -> {};
+
+    void onProgress(DownloadProgress progress);
+}
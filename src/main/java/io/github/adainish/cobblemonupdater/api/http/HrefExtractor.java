@@ -0,0 +1,228 @@
+package io.github.adainish.cobblemonupdater.api.http;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * Streaming extractor for href attribute values in HTML.
+ * Reads the page in fixed size chunks with a small state machine, so links split across chunk boundaries
+ * or pages without line breaks are handled, memory stays constant and scanning can stop once the wanted link is found.
+ *
+ * @Author Adainish
+ */
+public final class HrefExtractor
+{
+    private static final int CHUNK_SIZE = 8192;
+    /**
+     * Longer values are not links we care about, they are skipped to keep memory bounded
+     */
+    private static final int MAX_HREF_LENGTH = 4096;
+
+    /**
+     * Receives every extracted link
+     */
+    @FunctionalInterface
+    public interface LinkVisitor
+    {
+        /**
+         * @param href The attribute value, with &amp;amp; decoded
+         * @return Whether to keep scanning
+         */
+        boolean visit(String href);
+    }
+
+    private enum State
+    {
+        SCAN,
+        NAME,
+        BEFORE_EQUALS,
+        BEFORE_VALUE,
+        QUOTED,
+        UNQUOTED
+    }
+
+    private static final String ATTRIBUTE = "href";
+
+    private State state = State.SCAN;
+    private int matched = 0;
+    private char previous = ' ';
+    private char quote;
+    private boolean overflow;
+    private final StringBuilder value = new StringBuilder(128);
+
+    private HrefExtractor() {
+    }
+
+    /**
+     * Extract links from a reader, stopping when the visitor asks to
+     * @param reader The page, it is not closed
+     * @param visitor Receives each link
+     * @return Whether the visitor stopped the scan
+     * @throws IOException If reading failed
+     */
+    public static boolean extract(Reader reader, LinkVisitor visitor) throws IOException {
+        HrefExtractor extractor = new HrefExtractor();
+        char[] chunk = new char[CHUNK_SIZE];
+        int read;
+        while ((read = reader.read(chunk)) != -1) {
+            if (extractor.feed(chunk, 0, read, visitor))
+                return true;
+        }
+        return extractor.finish(visitor);
+    }
+
+    /**
+     * Extract links from text that is already in memory
+     * @param text The page
+     * @param visitor Receives each link
+     * @return Whether the visitor stopped the scan
+     */
+    public static boolean extract(CharSequence text, LinkVisitor visitor) {
+        HrefExtractor extractor = new HrefExtractor();
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            if (extractor.accept(text.charAt(i), visitor))
+                return true;
+        }
+        return extractor.finish(visitor);
+    }
+
+    /**
+     * Find the first link matching a filter, reading no further than needed
+     * @param reader The page, it is not closed
+     * @param filter The filter
+     * @return The link, or null if none matched
+     * @throws IOException If reading failed
+     */
+    public static String findFirst(Reader reader, Predicate<String> filter) throws IOException {
+        String[] found = new String[1];
+        extract(reader, href -> {
+            if (!filter.test(href))
+                return true;
+            found[0] = href;
+            return false;
+        });
+        return found[0];
+    }
+
+    /**
+     * Collect every link on a page
+     * @param text The page
+     * @return The links in page order
+     */
+    public static List<String> extractAll(CharSequence text) {
+        List<String> links = new ArrayList<>();
+        extract(text, href -> {
+            links.add(href);
+            return true;
+        });
+        return links;
+    }
+
+    private boolean feed(char[] chunk, int offset, int length, LinkVisitor visitor) {
+        for (int i = offset; i < offset + length; i++) {
+            if (accept(chunk[i], visitor))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return Whether the visitor asked to stop
+     */
+    private boolean accept(char c, LinkVisitor visitor) {
+        boolean stop = false;
+        switch (state) {
+            case SCAN -> {
+                // The attribute name has to start a word, so data-href is not picked up
+                if (isNameStart(previous) && Character.toLowerCase(c) == 'h') {
+                    matched = 1;
+                    state = State.NAME;
+                }
+            }
+            case NAME -> {
+                if (Character.toLowerCase(c) == ATTRIBUTE.charAt(matched)) {
+                    if (++matched == ATTRIBUTE.length())
+                        state = State.BEFORE_EQUALS;
+                } else {
+                    state = State.SCAN;
+                }
+            }
+            case BEFORE_EQUALS -> {
+                if (c == '=')
+                    state = State.BEFORE_VALUE;
+                else if (!Character.isWhitespace(c))
+                    state = State.SCAN;
+            }
+            case BEFORE_VALUE -> {
+                if (c == '"' || c == '\'') {
+                    quote = c;
+                    startValue();
+                    state = State.QUOTED;
+                } else if (c == '>') {
+                    state = State.SCAN;
+                } else if (!Character.isWhitespace(c)) {
+                    startValue();
+                    append(c);
+                    state = State.UNQUOTED;
+                }
+            }
+            case QUOTED -> {
+                if (c == quote)
+                    stop = emit(visitor);
+                else append(c);
+            }
+            case UNQUOTED -> {
+                if (Character.isWhitespace(c) || c == '>')
+                    stop = emit(visitor);
+                else append(c);
+            }
+        }
+        previous = c;
+        return stop;
+    }
+
+    private boolean finish(LinkVisitor visitor) {
+        // An unquoted value may run up to the end of the page
+        if (state == State.UNQUOTED)
+            return emit(visitor);
+        return false;
+    }
+
+    private void startValue() {
+        value.setLength(0);
+        overflow = false;
+    }
+
+    private void append(char c) {
+        if (value.length() < MAX_HREF_LENGTH)
+            value.append(c);
+        else overflow = true;
+    }
+
+    private boolean emit(LinkVisitor visitor) {
+        state = State.SCAN;
+        if (overflow || value.length() == 0)
+            return false;
+        return !visitor.visit(decodeAmpersands(value));
+    }
+
+    private static boolean isNameStart(char previous) {
+        return Character.isWhitespace(previous) || previous == '<' || previous == '"' || previous == '\'';
+    }
+
+    private static String decodeAmpersands(StringBuilder value) {
+        int index = value.indexOf("&amp;");
+        if (index < 0)
+            return value.toString();
+        StringBuilder decoded = new StringBuilder(value);
+        while (index >= 0) {
+            decoded.replace(index, index + 5, "&");
+            index = decoded.indexOf("&amp;", index + 1);
+        }
+        return decoded.toString();
+    }
+}
@@ -0,0 +1,301 @@
+package io.github.adainish.cobblemonupdater.api.http;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import io.github.adainish.cobblemonupdater.api.Logger;
+import io.github.adainish.cobblemonupdater.api.metrics.Counter;
+import io.github.adainish.cobblemonupdater.api.metrics.Metrics;
+import io.github.adainish.cobblemonupdater.config.Adapters;
+
+import java.io.*;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A small HTTP cache for directory listings and maven metadata.
+ * Entries are served from memory while they are fresh, revalidated with ETag / Last-Modified once they expire
+ * and persisted to disk so they survive restarts. Concurrent requests for the same URL share one fetch.
+ * Pages fetched in bulk, like the version directories of a crawl, can be kept in memory only, and the file is written
+ * a while after the last change instead of after every fetch.
+ *
+ * @Author Adainish
+ */
+public class HttpCache
+{
+    private static final String CACHE_FILE = "http-cache.json";
+    private static final long SAVE_DELAY_SECONDS = 30;
+    private static final Counter LOOKUPS = Metrics.counter("cobblemonupdater_http_cache_lookups_total",
+            "HTTP cache lookups by result: fresh, revalidated, fetched, shared or stale", "result");
+
+    /**
+     * A cached response
+     */
+    public static class Entry
+    {
+        public String body;
+        public String etag;
+        public String lastModified;
+        public long fetchedAt;
+        /**
+         * Kept in memory only, never written to disk
+         */
+        public transient boolean memoryOnly;
+    }
+
+    private final File file;
+    private final HttpService http;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<String>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicBoolean saveScheduled = new AtomicBoolean();
+    private volatile boolean dirty = false;
+    private volatile long ttlMillis;
+    private volatile long maxStaleMillis;
+
+    /**
+     * Create a cache backed by a file in the given directory
+     * @param dir Directory to store the cache in
+     * @param ttlMillis How long an entry is served without revalidation
+     * @param http The network layer to fetch with
+     */
+    public HttpCache(File dir, long ttlMillis, HttpService http) {
+        this.file = new File(dir, CACHE_FILE);
+        this.http = http;
+        this.ttlMillis = ttlMillis;
+        this.maxStaleMillis = ttlMillis;
+    }
+
+    /**
+     * Load the cache from disk, an unreadable cache file is ignored
+     * @param dir Directory the cache is stored in
+     * @param ttlMillis How long an entry is served without revalidation
+     * @param http The network layer to fetch with
+     * @return The loaded cache
+     */
+    public static HttpCache load(File dir, long ttlMillis, HttpService http) {
+        HttpCache cache = new HttpCache(dir, ttlMillis, http);
+        if (!cache.file.exists())
+            return cache;
+        Gson gson = Adapters.PRETTY_MAIN_GSON;
+        try (Reader reader = new InputStreamReader(new FileInputStream(cache.file), StandardCharsets.UTF_8)) {
+            Map<String, Entry> stored = gson.fromJson(reader, new TypeToken<Map<String, Entry>>() {}.getType());
+            if (stored != null) {
+                stored.forEach((url, entry) -> {
+                    if (entry != null && entry.body != null)
+                        cache.entries.put(url, entry);
+                });
+            }
+        } catch (Exception e) {
+            Logger.warn("Failed to read the HTTP cache, starting with an empty cache");
+            Logger.log(e);
+        }
+        return cache;
+    }
+
+    public long getTtlMillis() {
+        return ttlMillis;
+    }
+
+    public void setTtlMillis(long ttlMillis) {
+        this.ttlMillis = ttlMillis;
+    }
+
+    /**
+     * @param maxStaleMillis How old a cached copy may be to still be served when the server can't be reached
+     */
+    public void setMaxStaleMillis(long maxStaleMillis) {
+        this.maxStaleMillis = maxStaleMillis;
+    }
+
+    /**
+     * Get the body of a URL, from memory if the entry is fresh
+     * @param url The URL to fetch
+     * @return The response body
+     * @throws IOException If the URL could not be fetched and nothing is cached
+     */
+    public String get(String url) throws IOException {
+        return get(url, true);
+    }
+
+    /**
+     * Get the body of a URL, from memory if the entry is fresh
+     * @param url The URL to fetch
+     * @param persist Whether to write the entry to disk, pages fetched in bulk should stay in memory only
+     * @return The response body
+     * @throws IOException If the URL could not be fetched and nothing is cached
+     */
+    public String get(String url, boolean persist) throws IOException {
+        Entry entry = entries.get(url);
+        if (entry != null && System.currentTimeMillis() - entry.fetchedAt < ttlMillis) {
+            LOOKUPS.labels("fresh").inc();
+            return entry.body;
+        }
+        return fetchShared(url, persist);
+    }
+
+    /**
+     * Get the body of a URL, always revalidating the cached entry with the server
+     * @param url The URL to fetch
+     * @return The response body
+     * @throws IOException If the URL could not be fetched and nothing is cached
+     */
+    public String revalidate(String url) throws IOException {
+        return fetchShared(url, true);
+    }
+
+    /**
+     * Drop a cached entry
+     * @param url The URL to forget
+     */
+    public void invalidate(String url) {
+        if (entries.remove(url) != null)
+            scheduleSave();
+    }
+
+    private String fetchShared(String url, boolean persist) throws IOException {
+        CompletableFuture<String> mine = new CompletableFuture<>();
+        CompletableFuture<String> existing = inFlight.putIfAbsent(url, mine);
+        if (existing != null) {
+            LOOKUPS.labels("shared").inc();
+            return await(existing);
+        }
+        try {
+            String body = fetch(url, persist);
+            mine.complete(body);
+            return body;
+        } catch (IOException | RuntimeException e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(url, mine);
+        }
+    }
+
+    private String fetch(String url, boolean persist) throws IOException {
+        Entry cached = entries.get(url);
+        HttpRequest.Builder request = http.request(url, true);
+        if (cached != null) {
+            if (cached.etag != null)
+                request.header("If-None-Match", cached.etag);
+            if (cached.lastModified != null)
+                request.header("If-Modified-Since", cached.lastModified);
+        }
+        HttpResponse<byte[]> response;
+        try {
+            response = http.send(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+        } catch (InterruptedIOException e) {
+            throw e;
+        } catch (IOException e) {
+            return stale(url, cached, e);
+        }
+        int code = response.statusCode();
+        if (code == 304 && cached != null) {
+            LOOKUPS.labels("revalidated").inc();
+            Logger.trace(() -> "HTTP cache revalidated: " + url);
+            cached.fetchedAt = System.currentTimeMillis();
+            cached.memoryOnly = !persist;
+            scheduleSave();
+            return cached.body;
+        }
+        IOException failure = new IOException("Unexpected response code " + code + " from " + url);
+        // Only an unreachable or failing server is worth covering for, a 404 means the cached page is gone
+        if (code >= 500)
+            return stale(url, cached, failure);
+        if (code != 200)
+            throw failure;
+        String body = HttpService.decodeString(response);
+        Entry entry = new Entry();
+        entry.body = body;
+        entry.etag = response.headers().firstValue("ETag").orElse(null);
+        entry.lastModified = response.headers().firstValue("Last-Modified").orElse(null);
+        entry.fetchedAt = System.currentTimeMillis();
+        entry.memoryOnly = !persist;
+        entries.put(url, entry);
+        LOOKUPS.labels("fetched").inc();
+        scheduleSave();
+        return body;
+    }
+
+    /**
+     * Serve the cached copy when the server can't be reached, as long as it is not too old
+     */
+    private String stale(String url, Entry cached, IOException failure) throws IOException {
+        if (cached == null || System.currentTimeMillis() - cached.fetchedAt > maxStaleMillis)
+            throw failure;
+        LOOKUPS.labels("stale").inc();
+        Logger.warn("Failed to refresh " + url + ", serving the cached copy: " + failure.getMessage());
+        return cached.body;
+    }
+
+    private static String await(CompletableFuture<String> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a shared request");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io)
+                throw io;
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Write the cache to disk a while after the first change, so a burst of fetches is written once
+     */
+    private void scheduleSave() {
+        dirty = true;
+        if (saveScheduled.compareAndSet(false, true))
+            CompletableFuture.delayedExecutor(SAVE_DELAY_SECONDS, TimeUnit.SECONDS).execute(this::flush);
+    }
+
+    /**
+     * Write the cache to disk if anything changed, called after a crawl and on shutdown.
+     * Memory only pages that expired are dropped, the next crawl fetches them again.
+     */
+    public void flush() {
+        saveScheduled.set(false);
+        long now = System.currentTimeMillis();
+        entries.values().removeIf(entry -> entry.memoryOnly && now - entry.fetchedAt >= ttlMillis);
+        if (dirty)
+            save();
+    }
+
+    /**
+     * Write the cache to disk
+     */
+    public synchronized void save() {
+        dirty = false;
+        File dir = file.getParentFile();
+        if (dir == null)
+            return;
+        dir.mkdirs();
+        Gson gson = Adapters.PRETTY_MAIN_GSON;
+        File temp = new File(dir, CACHE_FILE + ".tmp");
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(temp), StandardCharsets.UTF_8)) {
+            Map<String, Entry> persisted = new TreeMap<>();
+            entries.forEach((url, entry) -> {
+                if (!entry.memoryOnly)
+                    persisted.put(url, entry);
+            });
+            gson.toJson(persisted, writer);
+        } catch (IOException e) {
+            Logger.log(e);
+            return;
+        }
+        try {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Logger.log(e);
+        }
+    }
+}
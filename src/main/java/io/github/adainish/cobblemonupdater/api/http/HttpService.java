@@ -0,0 +1,354 @@
+package io.github.adainish.cobblemonupdater.api.http;
+
+import io.github.adainish.cobblemonupdater.api.Logger;
+import io.github.adainish.cobblemonupdater.api.metrics.Counter;
+import io.github.adainish.cobblemonupdater.api.metrics.Histogram;
+import io.github.adainish.cobblemonupdater.api.metrics.Metrics;
+import io.github.adainish.cobblemonupdater.config.Config;
+import net.fabricmc.loader.api.FabricLoader;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+import javax.net.ssl.SSLSession;
+
+/**
+ * The network layer used for every fetch the updater does.
+ * Wraps one shared {@link HttpClient} so connections are pooled and reused over HTTP/2 where the mirror supports it,
+ * and adds deadlines, retries with exponential backoff and jitter, compression and a consistent User-Agent.
+ *
+ * @Author Adainish
+ */
+public class HttpService
+{
+    private static final String USER_AGENT = "Mozilla/5.0 (compatible; CobblemonUpdater/" + modVersion() + ")";
+    private static final long MAX_BACKOFF_MILLIS = 30000;
+    private static final Counter REQUESTS = Metrics.counter("cobblemonupdater_http_requests_total",
+            "HTTP attempts by host and outcome, the outcome is the status class, timeout or error", "host", "outcome");
+    private static final Histogram REQUEST_DURATION = Metrics.histogram("cobblemonupdater_http_request_duration_seconds",
+            "Time until the response headers of an HTTP attempt arrived", Metrics.LATENCY_BUCKETS, "host");
+    private static final Counter RETRIES = Metrics.counter("cobblemonupdater_http_retries_total",
+            "HTTP attempts that were retried", "host");
+
+    /**
+     * Closes streamed bodies that stopped sending data
+     */
+    private static final ScheduledExecutorService WATCHDOG = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "CobblemonUpdater-HttpWatchdog");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final HttpClient client;
+    private volatile Duration requestTimeout;
+    private volatile long readIdleTimeoutMillis;
+    private volatile int maxRetries;
+    private volatile long backoffMillis;
+
+    /**
+     * Create a service using the settings from the config
+     * @param config The loaded config
+     */
+    public HttpService(Config config) {
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .connectTimeout(Duration.ofSeconds(Math.max(1, config.httpConnectTimeoutSeconds)))
+                .build();
+        configure(config);
+    }
+
+    /**
+     * Apply the request settings from the config, the connect timeout only applies to new services
+     * @param config The loaded config
+     */
+    public void configure(Config config) {
+        this.requestTimeout = Duration.ofSeconds(Math.max(1, config.httpRequestTimeoutSeconds));
+        this.maxRetries = Math.max(0, config.httpMaxRetries);
+        this.backoffMillis = Math.max(50, config.httpRetryBackoffMillis);
+        this.readIdleTimeoutMillis = Math.max(1, config.httpReadIdleTimeoutSeconds) * 1000L;
+    }
+
+    public HttpClient getClient() {
+        return client;
+    }
+
+    public String getUserAgent() {
+        return USER_AGENT;
+    }
+
+    /**
+     * Start a GET request with the default headers and deadline
+     * @param url The URL to request
+     * @param compressed Whether the server may compress the response, use false for ranged or binary downloads
+     * @return The request builder
+     */
+    public HttpRequest.Builder request(String url, boolean compressed) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(url))
+                .timeout(requestTimeout)
+                .header("User-Agent", USER_AGENT)
+                .GET();
+        if (compressed)
+            builder.header("Accept-Encoding", "gzip, deflate");
+        return builder;
+    }
+
+    /**
+     * Fetch a URL as text
+     * @param url The URL to fetch
+     * @return The decoded body
+     * @throws IOException If the request failed after all retries or the status was not 200
+     */
+    public String getString(String url) throws IOException {
+        HttpResponse<byte[]> response = send(request(url, true).build(), HttpResponse.BodyHandlers.ofByteArray());
+        if (response.statusCode() != 200)
+            throw new IOException("Unexpected response code " + response.statusCode() + " from " + url);
+        return decodeString(response);
+    }
+
+    /**
+     * Open a URL as a stream, the caller has to check the status code and close the body
+     * @param url The URL to open
+     * @return The response with an undecoded body
+     * @throws IOException If the request failed after all retries
+     */
+    public HttpResponse<InputStream> getStream(String url) throws IOException {
+        return send(request(url, false).build(), HttpResponse.BodyHandlers.ofInputStream());
+    }
+
+    /**
+     * Send a request, retrying connection failures and retryable status codes.
+     * The request deadline covers the whole exchange for buffered bodies and the response headers for streams,
+     * a streamed body fails with an {@link HttpTimeoutException} once it goes without data for the read idle timeout.
+     * @param request The request to send
+     * @param handler The body handler
+     * @return The response
+     * @throws IOException If the request failed after all retries
+     */
+    public <T> HttpResponse<T> send(HttpRequest request, HttpResponse.BodyHandler<T> handler) throws IOException {
+        return send(request, handler, maxRetries);
+    }
+
+    /**
+     * Send a request once, for callers that retry on their own, like resumable downloads.
+     * A retryable status is returned like any other, check it with {@link #isRetryable(int)}.
+     * @param request The request to send
+     * @param handler The body handler
+     * @return The response
+     * @throws IOException If the request failed
+     */
+    public <T> HttpResponse<T> sendOnce(HttpRequest request, HttpResponse.BodyHandler<T> handler) throws IOException {
+        return send(request, handler, 0);
+    }
+
+    private <T> HttpResponse<T> send(HttpRequest request, HttpResponse.BodyHandler<T> handler, int maxRetries) throws IOException {
+        long deadlineMillis = request.timeout().orElse(requestTimeout).toMillis();
+        String host = String.valueOf(request.uri().getHost());
+        IOException lastFailure = null;
+        for (int attempt = 0; attempt <= maxRetries; attempt++) {
+            if (attempt > 0) {
+                RETRIES.labels(host).inc();
+                sleep(backoff(attempt, lastFailure));
+            }
+            long start = System.nanoTime();
+            CompletableFuture<HttpResponse<T>> future = client.sendAsync(request, handler);
+            try {
+                HttpResponse<T> response = future.get(deadlineMillis, TimeUnit.MILLISECONDS);
+                REQUEST_DURATION.labels(host).observeSince(start);
+                REQUESTS.labels(host, response.statusCode() / 100 + "xx").inc();
+                if (!isRetryable(response.statusCode()) || attempt == maxRetries)
+                    return watchBody(response);
+                discard(response);
+                lastFailure = new RetryableStatusException(response);
+            } catch (TimeoutException e) {
+                future.cancel(true);
+                REQUESTS.labels(host, "timeout").inc();
+                lastFailure = new HttpTimeoutException("Request to " + request.uri() + " timed out after " + deadlineMillis + "ms");
+            } catch (ExecutionException e) {
+                REQUESTS.labels(host, e.getCause() instanceof HttpTimeoutException ? "timeout" : "error").inc();
+                if (!(e.getCause() instanceof IOException io))
+                    throw new IOException(e.getCause());
+                lastFailure = io;
+            } catch (InterruptedException e) {
+                future.cancel(true);
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while requesting " + request.uri());
+            }
+            int failedAttempt = attempt + 1;
+            String reason = lastFailure.getMessage();
+            Logger.debug(() -> "Request to " + request.uri() + " failed (attempt " + failedAttempt + "): " + reason);
+        }
+        throw lastFailure;
+    }
+
+    /**
+     * Put a streamed body under the idle read watchdog
+     */
+    @SuppressWarnings("unchecked")
+    private <T> HttpResponse<T> watchBody(HttpResponse<T> response) {
+        if (!(response.body() instanceof InputStream in))
+            return response;
+        InputStream watched = new IdleTimeoutInputStream(in, readIdleTimeoutMillis, WATCHDOG, response.uri().toString());
+        return (HttpResponse<T>) new StreamResponse((HttpResponse<InputStream>) response, watched);
+    }
+
+    /**
+     * Decode a compressed stream according to its Content-Encoding
+     * @param response The response
+     * @return A stream of the decoded body
+     * @throws IOException If the gzip header is invalid
+     */
+    public static InputStream decode(HttpResponse<InputStream> response) throws IOException {
+        String encoding = response.headers().firstValue("Content-Encoding").orElse("identity");
+        if (encoding.equalsIgnoreCase("gzip"))
+            return new GZIPInputStream(response.body(), 8192);
+        if (encoding.equalsIgnoreCase("deflate"))
+            return new InflaterInputStream(response.body());
+        return response.body();
+    }
+
+    /**
+     * Decode a buffered body according to its Content-Encoding
+     * @param response The response
+     * @return The body as UTF-8 text
+     * @throws IOException If the body could not be decompressed
+     */
+    public static String decodeString(HttpResponse<byte[]> response) throws IOException {
+        String encoding = response.headers().firstValue("Content-Encoding").orElse("identity");
+        byte[] body = response.body();
+        if (encoding.equalsIgnoreCase("gzip")) {
+            try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(body))) {
+                body = in.readAllBytes();
+            }
+        } else if (encoding.equalsIgnoreCase("deflate")) {
+            try (InputStream in = new InflaterInputStream(new ByteArrayInputStream(body))) {
+                body = in.readAllBytes();
+            }
+        }
+        return new String(body, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param statusCode A response status
+     * @return Whether the status is temporary and the request worth repeating
+     */
+    public static boolean isRetryable(int statusCode) {
+        return statusCode == 429 || statusCode == 502 || statusCode == 503 || statusCode == 504;
+    }
+
+    private long backoff(int attempt, IOException lastFailure) {
+        if (lastFailure instanceof RetryableStatusException status && status.retryAfterMillis > 0)
+            return Math.min(MAX_BACKOFF_MILLIS, status.retryAfterMillis);
+        // Full jitter keeps servers that failed together from retrying together
+        long ceiling = Math.min(MAX_BACKOFF_MILLIS, backoffMillis << Math.min(attempt - 1, 16));
+        return ThreadLocalRandom.current().nextLong(ceiling / 2, ceiling + 1);
+    }
+
+    private static void sleep(long millis) throws InterruptedIOException {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to retry");
+        }
+    }
+
+    private static void discard(HttpResponse<?> response) {
+        if (response.body() instanceof InputStream in) {
+            try {
+                in.close();
+            } catch (IOException ignored) {
+                // Nothing left to do with a body we are throwing away
+            }
+        }
+    }
+
+    private static String modVersion() {
+        try {
+            return FabricLoader.getInstance().getModContainer("cobblemonupdater")
+                    .map(mod -> mod.getMetadata().getVersion().getFriendlyString())
+                    .orElse("dev");
+        } catch (Throwable e) {
+            return "dev";
+        }
+    }
+
+    /**
+     * A streamed response with its body replaced
+     */
+    private record StreamResponse(HttpResponse<InputStream> response, InputStream body) implements HttpResponse<InputStream>
+    {
+        @Override
+        public int statusCode() {
+            return response.statusCode();
+        }
+
+        @Override
+        public HttpRequest request() {
+            return response.request();
+        }
+
+        @Override
+        public Optional<HttpResponse<InputStream>> previousResponse() {
+            return response.previousResponse();
+        }
+
+        @Override
+        public HttpHeaders headers() {
+            return response.headers();
+        }
+
+        @Override
+        public Optional<SSLSession> sslSession() {
+            return response.sslSession();
+        }
+
+        @Override
+        public URI uri() {
+            return response.uri();
+        }
+
+        @Override
+        public HttpClient.Version version() {
+            return response.version();
+        }
+    }
+
+    /**
+     * A response with a status code worth retrying
+     */
+    private static class RetryableStatusException extends IOException
+    {
+        private final long retryAfterMillis;
+
+        RetryableStatusException(HttpResponse<?> response) {
+            super("Retryable response code " + response.statusCode() + " from " + response.uri());
+            long retryAfter = 0;
+            try {
+                retryAfter = Long.parseLong(response.headers().firstValue("Retry-After").orElse("0").trim()) * 1000L;
+            } catch (NumberFormatException ignored) {
+                // Retry-After may also be an HTTP date, fall back to the regular backoff
+            }
+            this.retryAfterMillis = retryAfter;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package io.github.adainish.cobblemonupdater.api.http;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpTimeoutException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A response body that is closed when no data arrives for too long.
+ * The request deadline only covers the response headers, without this a mirror that stalls halfway through a body
+ * would block the reading thread forever. A read cut off by the watchdog throws an {@link HttpTimeoutException}
+ * instead of looking like the end of the body.
+ *
+ * @Author Adainish
+ */
+public class IdleTimeoutInputStream extends FilterInputStream
+{
+    private final long idleNanos;
+    private final String description;
+    private final ScheduledFuture<?> watchdog;
+    private volatile long lastProgress = System.nanoTime();
+    private volatile boolean timedOut = false;
+    private volatile boolean closed = false;
+
+    /**
+     * @param in The body to watch
+     * @param idleMillis How long a read may go without data
+     * @param scheduler Runs the watchdog checks
+     * @param description What is being read, used in the timeout message
+     */
+    public IdleTimeoutInputStream(InputStream in, long idleMillis, ScheduledExecutorService scheduler, String description) {
+        super(in);
+        this.idleNanos = TimeUnit.MILLISECONDS.toNanos(idleMillis);
+        this.description = description;
+        long checkMillis = Math.max(100, idleMillis / 4);
+        this.watchdog = scheduler.scheduleAtFixedRate(this::check, checkMillis, checkMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void check() {
+        if (closed || System.nanoTime() - lastProgress < idleNanos)
+            return;
+        timedOut = true;
+        try {
+            close();
+        } catch (IOException ignored) {
+            // The reader sees the timeout either way
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        int value;
+        try {
+            value = super.read();
+        } catch (IOException e) {
+            if (timedOut)
+                throw timeout();
+            throw e;
+        }
+        value = guard(value);
+        if (value != -1)
+            lastProgress = System.nanoTime();
+        return value;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        int read;
+        try {
+            read = super.read(buffer, offset, length);
+        } catch (IOException e) {
+            if (timedOut)
+                throw timeout();
+            throw e;
+        }
+        read = guard(read);
+        if (read > 0)
+            lastProgress = System.nanoTime();
+        return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = super.skip(n);
+        if (skipped > 0)
+            lastProgress = System.nanoTime();
+        return skipped;
+    }
+
+    /**
+     * Closing the body ends a blocked read as if the body was complete, report that as a timeout instead
+     */
+    private int guard(int result) throws IOException {
+        if (timedOut)
+            throw timeout();
+        return result;
+    }
+
+    private HttpTimeoutException timeout() {
+        return new HttpTimeoutException("No data received from " + description + " for " + TimeUnit.NANOSECONDS.toSeconds(idleNanos) + "s");
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed)
+            return;
+        closed = true;
+        watchdog.cancel(false);
+        super.close();
+    }
+}
@@ -0,0 +1,57 @@
+package io.github.adainish.cobblemonupdater.api.metrics;
+
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A count that only goes up, e.g. requests made or bytes downloaded
+ *
+ * @Author Adainish
+ */
+public class Counter extends Metric<Counter.Child>
+{
+    public static class Child
+    {
+        private final LongAdder value = new LongAdder();
+
+        public void inc() {
+            value.increment();
+        }
+
+        public void inc(long amount) {
+            if (amount > 0)
+                value.add(amount);
+        }
+
+        public long get() {
+            return value.sum();
+        }
+    }
+
+    Counter(String name, String help, String[] labelNames) {
+        super(name, help, labelNames);
+    }
+
+    public void inc() {
+        unlabelled().inc();
+    }
+
+    public void inc(long amount) {
+        unlabelled().inc(amount);
+    }
+
+    @Override
+    protected Child newChild() {
+        return new Child();
+    }
+
+    @Override
+    protected String type() {
+        return "counter";
+    }
+
+    @Override
+    protected void writeChild(StringBuilder out, List<String> values, Child child) {
+        out.append(getName()).append(formatLabels(values, null, null)).append(' ').append(child.get()).append('\n');
+    }
+}
@@ -0,0 +1,59 @@
+package io.github.adainish.cobblemonupdater.api.metrics;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.DoubleSupplier;
+
+/**
+ * A value that goes up and down, either set directly or read from a supplier on every scrape
+ *
+ * @Author Adainish
+ */
+public class Gauge extends Metric<Gauge.Child>
+{
+    public static class Child
+    {
+        private final AtomicLong bits = new AtomicLong(Double.doubleToRawLongBits(0));
+        private volatile DoubleSupplier supplier;
+
+        public void set(double value) {
+            bits.set(Double.doubleToRawLongBits(value));
+        }
+
+        public double get() {
+            DoubleSupplier current = supplier;
+            return current != null ? current.getAsDouble() : Double.longBitsToDouble(bits.get());
+        }
+    }
+
+    Gauge(String name, String help, String[] labelNames) {
+        super(name, help, labelNames);
+    }
+
+    public void set(double value) {
+        unlabelled().set(value);
+    }
+
+    /**
+     * Read the value from a supplier on every scrape instead
+     * @param supplier Supplies the current value, it should be cheap and thread safe
+     */
+    public void setSupplier(DoubleSupplier supplier) {
+        unlabelled().supplier = supplier;
+    }
+
+    @Override
+    protected Child newChild() {
+        return new Child();
+    }
+
+    @Override
+    protected String type() {
+        return "gauge";
+    }
+
+    @Override
+    protected void writeChild(StringBuilder out, List<String> values, Child child) {
+        out.append(getName()).append(formatLabels(values, null, null)).append(' ').append(formatValue(child.get())).append('\n');
+    }
+}
@@ -0,0 +1,82 @@
+package io.github.adainish.cobblemonupdater.api.metrics;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A distribution of observations over fixed buckets, e.g. request durations.
+ * Observing only increments striped adders, no lock is taken and concurrent observers don't contend on one value.
+ *
+ * @Author Adainish
+ */
+public class Histogram extends Metric<Histogram.Child>
+{
+    private final double[] bounds;
+
+    public class Child
+    {
+        // One slot per bucket plus the +Inf bucket, not cumulative
+        private final LongAdder[] buckets = new LongAdder[bounds.length + 1];
+        private final DoubleAdder sum = new DoubleAdder();
+
+        private Child() {
+            for (int i = 0; i < buckets.length; i++)
+                buckets[i] = new LongAdder();
+        }
+
+        public void observe(double value) {
+            int index = Arrays.binarySearch(bounds, value);
+            // An exact match belongs to its own bucket, le is inclusive
+            buckets[index >= 0 ? index : -index - 1].increment();
+            sum.add(value);
+        }
+
+        /**
+         * Observe the seconds since a {@link System#nanoTime()} reading
+         * @param startNanos The reading taken at the start
+         */
+        public void observeSince(long startNanos) {
+            observe((System.nanoTime() - startNanos) / 1e9);
+        }
+    }
+
+    Histogram(String name, String help, double[] bounds, String[] labelNames) {
+        super(name, help, labelNames);
+        this.bounds = bounds.clone();
+        Arrays.sort(this.bounds);
+    }
+
+    public void observe(double value) {
+        unlabelled().observe(value);
+    }
+
+    public void observeSince(long startNanos) {
+        unlabelled().observeSince(startNanos);
+    }
+
+    @Override
+    protected Child newChild() {
+        return new Child();
+    }
+
+    @Override
+    protected String type() {
+        return "histogram";
+    }
+
+    @Override
+    protected void writeChild(StringBuilder out, List<String> values, Child child) {
+        long cumulative = 0;
+        for (int i = 0; i < child.buckets.length; i++) {
+            cumulative += child.buckets[i].sum();
+            String le = i < bounds.length ? formatValue(bounds[i]) : "+Inf";
+            out.append(getName()).append("_bucket").append(formatLabels(values, "le", le)).append(' ').append(cumulative).append('\n');
+        }
+        String labels = formatLabels(values, null, null);
+        out.append(getName()).append("_sum").append(labels).append(' ').append(formatValue(child.sum.sum())).append('\n');
+        // Derived from the buckets so the count always matches the +Inf bucket
+        out.append(getName()).append("_count").append(labels).append(' ').append(cumulative).append('\n');
+    }
+}
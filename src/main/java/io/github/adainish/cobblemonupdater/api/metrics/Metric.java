@@ -0,0 +1,123 @@
+package io.github.adainish.cobblemonupdater.api.metrics;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A named metric with one child per combination of label values
+ *
+ * @param <C> The type of the children
+ * @Author Adainish
+ */
+public abstract class Metric<C>
+{
+    private final String name;
+    private final String help;
+    private final String[] labelNames;
+    private final Map<List<String>, C> children = new ConcurrentHashMap<>();
+    private volatile C unlabelled;
+
+    protected Metric(String name, String help, String[] labelNames) {
+        this.name = name;
+        this.help = help;
+        this.labelNames = labelNames;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    int labelCount() {
+        return labelNames.length;
+    }
+
+    /**
+     * Get the child for a combination of label values, created on first use
+     * @param values One value per label name, in order
+     * @return The child
+     */
+    public C labels(String... values) {
+        if (values.length != labelNames.length)
+            throw new IllegalArgumentException(name + " has labels " + Arrays.toString(labelNames) + ", got " + values.length + " values");
+        if (values.length == 0)
+            return unlabelled();
+        return children.computeIfAbsent(List.of(values), key -> newChild());
+    }
+
+    /**
+     * @return The child of a metric without labels
+     */
+    protected C unlabelled() {
+        C child = unlabelled;
+        if (child == null) {
+            child = children.computeIfAbsent(List.of(), key -> newChild());
+            unlabelled = child;
+        }
+        return child;
+    }
+
+    protected abstract C newChild();
+
+    protected abstract String type();
+
+    /**
+     * Write the samples of one child in the Prometheus text format
+     */
+    protected abstract void writeChild(StringBuilder out, List<String> values, C child);
+
+    /**
+     * Write the metric in the Prometheus text format
+     * @param out The exposition being built
+     */
+    void writeTo(StringBuilder out) {
+        out.append("# HELP ").append(name).append(' ').append(escape(help, false)).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type()).append('\n');
+        children.forEach((values, child) -> writeChild(out, values, child));
+    }
+
+    /**
+     * Format label values as {name="value",...}, optionally with one extra label
+     */
+    protected String formatLabels(List<String> values, String extraName, String extraValue) {
+        if (values.isEmpty() && extraName == null)
+            return "";
+        StringBuilder builder = new StringBuilder("{");
+        for (int i = 0; i < values.size(); i++) {
+            if (i > 0)
+                builder.append(',');
+            builder.append(labelNames[i]).append("=\"").append(escape(values.get(i), true)).append('"');
+        }
+        if (extraName != null) {
+            if (!values.isEmpty())
+                builder.append(',');
+            builder.append(extraName).append("=\"").append(extraValue).append('"');
+        }
+        return builder.append('}').toString();
+    }
+
+    static String formatValue(double value) {
+        if (Double.isNaN(value))
+            return "NaN";
+        if (Double.isInfinite(value))
+            return value > 0 ? "+Inf" : "-Inf";
+        if (value == Math.rint(value) && Math.abs(value) < 1e15)
+            return Long.toString((long) value);
+        return Double.toString(value);
+    }
+
+    private static String escape(String value, boolean quotes) {
+        StringBuilder builder = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\' -> builder.append("\\\\");
+                case '\n' -> builder.append("\\n");
+                case '"' -> builder.append(quotes ? "\\\"" : "\"");
+                default -> builder.append(c);
+            }
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,63 @@
+package io.github.adainish.cobblemonupdater.api.metrics;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * The registry of all updater metrics. Metrics are created once, usually in a static field next to the code they
+ * measure, and exported together in the Prometheus text format by {@link MetricsServer}.
+ *
+ * @Author Adainish
+ */
+public final class Metrics
+{
+    /**
+     * Buckets for request and command durations, in seconds
+     */
+    public static final double[] LATENCY_BUCKETS = {0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30};
+    /**
+     * Buckets for jar downloads, in seconds
+     */
+    public static final double[] DOWNLOAD_BUCKETS = {0.5, 1, 2.5, 5, 10, 30, 60, 120, 300};
+
+    private static final Map<String, Metric<?>> METRICS = new ConcurrentSkipListMap<>();
+
+    private Metrics() {
+    }
+
+    public static Counter counter(String name, String help, String... labelNames) {
+        return register(new Counter(name, help, labelNames));
+    }
+
+    public static Gauge gauge(String name, String help, String... labelNames) {
+        return register(new Gauge(name, help, labelNames));
+    }
+
+    public static Histogram histogram(String name, String help, double[] buckets, String... labelNames) {
+        return register(new Histogram(name, help, buckets, labelNames));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <M extends Metric<?>> M register(M metric) {
+        Metric<?> existing = METRICS.putIfAbsent(metric.getName(), metric);
+        if (existing == null) {
+            // Export metrics without labels from the start rather than after their first update
+            if (metric.labelCount() == 0)
+                metric.unlabelled();
+            return metric;
+        }
+        if (existing.getClass() != metric.getClass())
+            throw new IllegalArgumentException("Metric " + metric.getName() + " is already registered as a " + existing.type());
+        return (M) existing;
+    }
+
+    /**
+     * @return Every metric in the Prometheus text exposition format
+     */
+    public static String scrape() {
+        StringBuilder out = new StringBuilder(8192);
+        for (Metric<?> metric : METRICS.values())
+            metric.writeTo(out);
+        return out.toString();
+    }
+}
@@ -0,0 +1,84 @@
+package io.github.adainish.cobblemonupdater.api.metrics;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.github.adainish.cobblemonupdater.api.Logger;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Serves {@link Metrics#scrape()} on /metrics for a Prometheus scraper, using the HTTP server that ships with the JDK
+ *
+ * @Author Adainish
+ */
+public class MetricsServer
+{
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final String address;
+
+    private MetricsServer(HttpServer server, ExecutorService executor, String address) {
+        this.server = server;
+        this.executor = executor;
+        this.address = address;
+    }
+
+    /**
+     * Start serving metrics
+     * @param host The address to bind to, keep it on loopback unless the port is firewalled
+     * @param port The port to listen on
+     * @return The running server
+     * @throws IOException If the port could not be bound
+     */
+    public static MetricsServer start(String host, int port) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(host, port), 0);
+        ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "CobblemonUpdater-Metrics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.createContext("/metrics", MetricsServer::handle);
+        server.start();
+        String address = host + ":" + server.getAddress().getPort();
+        Logger.log("Serving metrics on http://" + address + "/metrics");
+        return new MetricsServer(server, executor, address);
+    }
+
+    private static void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String method = exchange.getRequestMethod();
+            if (!method.equals("GET") && !method.equals("HEAD")) {
+                exchange.getResponseHeaders().set("Allow", "GET, HEAD");
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] body = Metrics.scrape().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            if (method.equals("HEAD")) {
+                exchange.sendResponseHeaders(200, -1);
+                return;
+            }
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+
+    public String getAddress() {
+        return address;
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
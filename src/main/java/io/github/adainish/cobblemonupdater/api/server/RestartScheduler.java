@@ -0,0 +1,295 @@
+package io.github.adainish.cobblemonupdater.api.server;
+
+import io.github.adainish.cobblemonupdater.Cobblemonupdater;
+import io.github.adainish.cobblemonupdater.api.Logger;
+import io.github.adainish.cobblemonupdater.config.Config;
+import net.kyori.adventure.audience.Audience;
+import net.kyori.adventure.bossbar.BossBar;
+import net.kyori.adventure.platform.fabric.FabricServerAudiences;
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.format.NamedTextColor;
+import net.minecraft.server.MinecraftServer;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Restarts the server to apply an update at a quiet moment instead of straight away.
+ * Once a restart is requested the scheduler waits until few players are online and ticks are fast, or until the
+ * longest allowed wait has passed, then counts down in game, saves the worlds and stops the server.
+ * A pending restart can be deferred or cancelled until the server actually stops.
+ *
+ * @Author Adainish
+ */
+public class RestartScheduler
+{
+    public enum State
+    {
+        IDLE, WAITING, COUNTDOWN, STOPPING
+    }
+
+    /**
+     * Seconds before the restart at which the countdown is announced in chat
+     */
+    private static final int[] ANNOUNCE_AT = {600, 300, 120, 60, 30, 10, 5, 4, 3, 2, 1};
+
+    private final ScheduledExecutorService scheduler;
+    private volatile int countdownSeconds;
+    private volatile int quietPlayerCount;
+    private volatile double quietMspt;
+    private volatile long maxWaitMillis;
+
+    private State state = State.IDLE;
+    private String reason;
+    private Consumer<String> notifier = message -> {};
+    private long requestedAt;
+    private long notBefore;
+    private long restartAt;
+    private BossBar bossBar;
+    private ScheduledFuture<?> task;
+    /**
+     * Whether a stop found no server, so the warning is logged once rather than every tick
+     */
+    private boolean waitingForServer;
+
+    public RestartScheduler(Config config) {
+        configure(config);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "CobblemonUpdater-Restart");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public void configure(Config config) {
+        this.countdownSeconds = Math.max(5, config.restartCountdownSeconds);
+        this.quietPlayerCount = Math.max(0, config.restartQuietPlayerCount);
+        this.quietMspt = Math.max(1, config.restartQuietMspt);
+        this.maxWaitMillis = Math.max(0, config.restartMaxWaitMinutes) * 60_000L;
+    }
+
+    /**
+     * Request a restart, a restart that is already pending keeps its place
+     * @param reason Why the server restarts, shown to players
+     * @param notifier Receives status updates, e.g. to DM the user that requested it
+     * @return A description of when the restart will happen
+     */
+    public synchronized String request(String reason, Consumer<String> notifier) {
+        this.notifier = notifier != null ? notifier : message -> {};
+        this.reason = reason;
+        if (state != State.IDLE)
+            return describe();
+        long now = System.currentTimeMillis();
+        state = State.WAITING;
+        waitingForServer = false;
+        requestedAt = now;
+        notBefore = now;
+        Logger.log("Restart requested: " + reason);
+        task = scheduler.scheduleAtFixedRate(this::tick, 0, 1, TimeUnit.SECONDS);
+        return describe();
+    }
+
+    /**
+     * Push a pending restart back, a running countdown is stopped
+     * @param minutes How long to wait before looking for a quiet window again
+     * @return Whether there was a restart to defer
+     */
+    public synchronized boolean defer(int minutes) {
+        if (state == State.IDLE || state == State.STOPPING)
+            return false;
+        minutes = Math.max(1, minutes);
+        long now = System.currentTimeMillis();
+        notBefore = now + minutes * 60_000L;
+        // The deferral also moves the deadline, otherwise it would start the countdown straight after
+        requestedAt = Math.max(requestedAt, notBefore - maxWaitMillis);
+        if (state == State.COUNTDOWN) {
+            hideBossBar();
+            broadcast(Component.text("The server restart has been postponed by " + minutes + " minutes.", NamedTextColor.YELLOW));
+        }
+        state = State.WAITING;
+        Logger.log("Restart deferred by " + minutes + " minutes");
+        return true;
+    }
+
+    /**
+     * Cancel a pending restart
+     * @return Whether there was a restart to cancel
+     */
+    public synchronized boolean cancel() {
+        if (state == State.IDLE || state == State.STOPPING)
+            return false;
+        if (state == State.COUNTDOWN) {
+            hideBossBar();
+            broadcast(Component.text("The server restart has been cancelled.", NamedTextColor.GREEN));
+        }
+        stopTask();
+        state = State.IDLE;
+        Logger.log("Restart cancelled");
+        return true;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * @return A description of the pending restart for Discord
+     */
+    public synchronized String describe() {
+        long now = System.currentTimeMillis();
+        return switch (state) {
+            case IDLE -> "No restart is pending.";
+            case WAITING -> {
+                String waiting = notBefore > now ? "deferred for " + formatDuration(notBefore - now) :
+                        "waiting for " + quietPlayerCount + " or fewer players and ticks under " + (int) quietMspt + " ms, now " + load();
+                yield "Restart pending (" + reason + "), " + waiting + ", at the latest in " + formatDuration(Math.max(0, deadline() - now)) + ".";
+            }
+            case COUNTDOWN -> "Restarting in " + formatDuration(Math.max(0, restartAt - now)) + " (" + reason + ").";
+            case STOPPING -> "The server is stopping.";
+        };
+    }
+
+    /**
+     * Stop the scheduler thread, a pending restart is dropped
+     */
+    public synchronized void shutdown() {
+        stopTask();
+        hideBossBar();
+        state = State.IDLE;
+        scheduler.shutdownNow();
+    }
+
+    private synchronized void tick() {
+        try {
+            long now = System.currentTimeMillis();
+            MinecraftServer server = Cobblemonupdater.getServer();
+            if (state == State.WAITING) {
+                if (now < notBefore)
+                    return;
+                boolean overdue = now >= deadline();
+                if (server == null || server.getPlayerCount() == 0) {
+                    // Nobody to warn
+                    stop(server);
+                } else if (overdue || isQuiet(server)) {
+                    startCountdown(now, overdue);
+                }
+            } else if (state == State.COUNTDOWN) {
+                long remainingMillis = restartAt - now;
+                if (remainingMillis <= 0) {
+                    stop(server);
+                    return;
+                }
+                int remaining = (int) Math.ceil(remainingMillis / 1000.0);
+                if (bossBar != null) {
+                    bossBar.name(Component.text("Server restart in " + formatDuration(remaining * 1000L), NamedTextColor.RED));
+                    bossBar.progress(Math.max(0f, Math.min(1f, remainingMillis / (countdownSeconds * 1000f))));
+                }
+                for (int mark : ANNOUNCE_AT) {
+                    if (mark == remaining) {
+                        broadcast(Component.text("The server restarts in " + formatDuration(mark * 1000L) + " (" + reason + ").", NamedTextColor.GOLD));
+                        break;
+                    }
+                }
+            }
+        } catch (Exception e) {
+            // Keep the scheduled task alive, an exception would cancel it
+            Logger.warn("Restart scheduler failed a tick");
+            Logger.log(e);
+        }
+    }
+
+    private boolean isQuiet(MinecraftServer server) {
+        return server.getPlayerCount() <= quietPlayerCount && server.getAverageTickTimeNanos() / 1_000_000.0 <= quietMspt;
+    }
+
+    private void startCountdown(long now, boolean overdue) {
+        state = State.COUNTDOWN;
+        restartAt = now + countdownSeconds * 1000L;
+        String message = "Restarting in " + formatDuration(countdownSeconds * 1000L) +
+                (overdue ? ", no quiet window was found in time" : ", the server is quiet (" + load() + ")");
+        Logger.log(message);
+        notifier.accept(message + ". Use /deferrestart or /cancelrestart to stop it.");
+        bossBar = BossBar.bossBar(Component.text("Server restart in " + formatDuration(countdownSeconds * 1000L), NamedTextColor.RED),
+                1f, BossBar.Color.RED, BossBar.Overlay.PROGRESS);
+        Audience players = players();
+        if (players != null)
+            players.showBossBar(bossBar);
+    }
+
+    /**
+     * Save the worlds on the server thread and stop the server
+     */
+    private void stop(MinecraftServer server) {
+        if (server == null) {
+            // Nothing to stop yet, keep the restart pending so the next tick tries again
+            if (!waitingForServer)
+                Logger.warn("The server is not available yet, the restart stays pending: " + reason);
+            waitingForServer = true;
+            hideBossBar();
+            state = State.WAITING;
+            return;
+        }
+        waitingForServer = false;
+        state = State.STOPPING;
+        stopTask();
+        hideBossBar();
+        notifier.accept("Saving the worlds and stopping the server...");
+        Logger.log("Stopping the server: " + reason);
+        broadcast(Component.text("The server is restarting now.", NamedTextColor.RED));
+        server.execute(() -> {
+            server.saveEverything(false, true, true);
+            // Returns straight away, the server thread shuts down after this task
+            server.halt(false);
+        });
+    }
+
+    private long deadline() {
+        return requestedAt + maxWaitMillis;
+    }
+
+    private String load() {
+        MinecraftServer server = Cobblemonupdater.getServer();
+        if (server == null)
+            return "server not running";
+        return server.getPlayerCount() + " players, " + String.format("%.1f", server.getAverageTickTimeNanos() / 1_000_000.0) + " ms per tick";
+    }
+
+    private void stopTask() {
+        if (task != null) {
+            task.cancel(false);
+            task = null;
+        }
+    }
+
+    private void hideBossBar() {
+        if (bossBar == null)
+            return;
+        Audience players = players();
+        if (players != null)
+            players.hideBossBar(bossBar);
+        bossBar = null;
+    }
+
+    private void broadcast(Component message) {
+        Audience players = players();
+        if (players != null)
+            players.sendMessage(message);
+    }
+
+    private Audience players() {
+        MinecraftServer server = Cobblemonupdater.getServer();
+        return server != null ? FabricServerAudiences.of(server).players() : null;
+    }
+
+    private static String formatDuration(long millis) {
+        long seconds = (millis + 999) / 1000;
+        if (seconds < 60)
+            return seconds + (seconds == 1 ? " second" : " seconds");
+        long minutes = seconds / 60;
+        long rest = seconds % 60;
+        return minutes + (minutes == 1 ? " minute" : " minutes") + (rest > 0 ? " " + rest + " seconds" : "");
+    }
+}
@@ -0,0 +1,301 @@
+package io.github.adainish.cobblemonupdater.api.server;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import io.github.adainish.cobblemonupdater.api.Logger;
+import io.github.adainish.cobblemonupdater.config.Adapters;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.level.ServerLevel;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records how long every server tick takes, plus memory, loaded chunks and players once a second, into fixed size
+ * primitive ring buffers. The server thread only writes two array slots per tick, all statistics are computed when
+ * they are asked for. The last summary of each Cobblemon version is kept across restarts, so the tick times after an
+ * update can be compared with the version before it.
+ *
+ * @Author Adainish
+ */
+public class TickSampler
+{
+    public static final int[] WINDOWS_SECONDS = {60, 300, 900};
+    private static final String BASELINE_FILE = "health-baseline.json";
+    private static final int MAX_BASELINES = 5;
+    /**
+     * 15 minutes at 20 ticks per second, with room for a server catching up on missed ticks
+     */
+    private static final int TICK_CAPACITY = 24_000;
+    private static final int SAMPLE_CAPACITY = 900;
+    private static final long SAMPLE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * Statistics over a window
+     *
+     * @param windowSeconds The window
+     * @param ticks         Ticks recorded in the window
+     * @param tps           Ticks per second
+     * @param meanMspt      Mean milliseconds per tick
+     * @param p50Mspt       Median milliseconds per tick
+     * @param p95Mspt       95th percentile milliseconds per tick
+     * @param p99Mspt       99th percentile milliseconds per tick
+     * @param maxMspt       Slowest tick
+     * @param maxPlayers    Most players online at once
+     * @param meanChunks    Mean loaded chunks
+     * @param usedMemory    Most heap in use, in bytes
+     */
+    public record Summary(int windowSeconds, int ticks, double tps, double meanMspt, double p50Mspt, double p95Mspt, double p99Mspt,
+                          double maxMspt, int maxPlayers, int meanChunks, long usedMemory) {
+    }
+
+    private final int[] tickMicros = new int[TICK_CAPACITY];
+    private final long[] tickEndNanos = new long[TICK_CAPACITY];
+    private volatile long tickCount;
+    private long tickStartNanos;
+
+    private final long[] sampleNanos = new long[SAMPLE_CAPACITY];
+    private final long[] usedMemory = new long[SAMPLE_CAPACITY];
+    private final int[] loadedChunks = new int[SAMPLE_CAPACITY];
+    private final int[] players = new int[SAMPLE_CAPACITY];
+    private volatile long sampleCount;
+    private long lastSampleNanos;
+    private volatile long startedNanos;
+
+    private final Path baselineFile;
+    private Map<String, Summary> baselines;
+    private ScheduledExecutorService reporter;
+
+    /**
+     * @param dataDir Directory to keep the summaries of previous versions in
+     */
+    public TickSampler(File dataDir) {
+        this.baselineFile = dataDir.toPath().resolve(BASELINE_FILE);
+    }
+
+    /**
+     * Called on the server thread when a tick starts
+     */
+    public void onStartTick() {
+        tickStartNanos = System.nanoTime();
+        if (startedNanos == 0)
+            startedNanos = tickStartNanos;
+    }
+
+    /**
+     * Called on the server thread when a tick ends
+     * @param server The server
+     */
+    public void onEndTick(MinecraftServer server) {
+        long end = System.nanoTime();
+        if (tickStartNanos == 0)
+            return;
+        long count = tickCount;
+        int index = (int) (count % TICK_CAPACITY);
+        tickMicros[index] = (int) Math.min(Integer.MAX_VALUE, (end - tickStartNanos) / 1000);
+        tickEndNanos[index] = end;
+        // The volatile write publishes the slot to readers
+        tickCount = count + 1;
+        if (end - lastSampleNanos >= SAMPLE_INTERVAL_NANOS) {
+            lastSampleNanos = end;
+            sample(server, end);
+        }
+    }
+
+    private void sample(MinecraftServer server, long now) {
+        int chunks = 0;
+        for (ServerLevel level : server.getAllLevels())
+            chunks += level.getChunkSource().getLoadedChunksCount();
+        Runtime runtime = Runtime.getRuntime();
+        long count = sampleCount;
+        int index = (int) (count % SAMPLE_CAPACITY);
+        sampleNanos[index] = now;
+        usedMemory[index] = runtime.totalMemory() - runtime.freeMemory();
+        loadedChunks[index] = chunks;
+        players[index] = server.getPlayerCount();
+        sampleCount = count + 1;
+    }
+
+    /**
+     * Compute the statistics of the last seconds
+     * @param windowSeconds The window
+     * @return The statistics, or null if no tick was recorded in the window
+     */
+    public Summary summarize(int windowSeconds) {
+        long now = System.nanoTime();
+        long from = now - TimeUnit.SECONDS.toNanos(windowSeconds);
+
+        long count = tickCount;
+        long oldest = Math.max(0, count - TICK_CAPACITY);
+        int[] micros = new int[(int) Math.min(count - oldest, TICK_CAPACITY)];
+        int ticks = 0;
+        long total = 0;
+        for (long i = count - 1; i >= oldest; i--) {
+            int index = (int) (i % TICK_CAPACITY);
+            if (tickEndNanos[index] < from)
+                break;
+            micros[ticks++] = tickMicros[index];
+            total += tickMicros[index];
+        }
+        if (ticks == 0)
+            return null;
+        Arrays.sort(micros, 0, ticks);
+        double coveredSeconds = Math.min(windowSeconds, (now - startedNanos) / 1e9);
+        double tps = Math.min(20.0, ticks / Math.max(1.0, coveredSeconds));
+
+        long samples = sampleCount;
+        long oldestSample = Math.max(0, samples - SAMPLE_CAPACITY);
+        int maxPlayers = 0;
+        long chunkTotal = 0;
+        int chunkSamples = 0;
+        long maxMemory = 0;
+        for (long i = samples - 1; i >= oldestSample; i--) {
+            int index = (int) (i % SAMPLE_CAPACITY);
+            if (sampleNanos[index] < from)
+                break;
+            maxPlayers = Math.max(maxPlayers, players[index]);
+            chunkTotal += loadedChunks[index];
+            chunkSamples++;
+            maxMemory = Math.max(maxMemory, usedMemory[index]);
+        }
+        return new Summary(windowSeconds, ticks, tps, total / 1000.0 / ticks, percentile(micros, ticks, 0.50), percentile(micros, ticks, 0.95),
+                percentile(micros, ticks, 0.99), micros[ticks - 1] / 1000.0, maxPlayers, chunkSamples > 0 ? (int) (chunkTotal / chunkSamples) : 0, maxMemory);
+    }
+
+    private static double percentile(int[] sorted, int length, double percentile) {
+        int index = (int) Math.ceil(percentile * length) - 1;
+        return sorted[Math.max(0, Math.min(length - 1, index))] / 1000.0;
+    }
+
+    /**
+     * Format the statistics of all windows as a table
+     * @param cobblemonVersion The running Cobblemon version, its predecessor's summary is shown for comparison
+     * @return The report
+     */
+    public String report(String cobblemonVersion) {
+        StringBuilder builder = new StringBuilder("```\n");
+        builder.append(String.format("%-4s %6s %7s %7s %7s %7s%n", "", "TPS", "p50", "p95", "p99", "max"));
+        Summary longest = null;
+        for (int window : WINDOWS_SECONDS) {
+            Summary summary = summarize(window);
+            if (summary == null)
+                continue;
+            longest = summary;
+            builder.append(row((window / 60) + "m", summary));
+        }
+        if (longest == null)
+            return "No ticks have been recorded yet.";
+        Map.Entry<String, Summary> baseline = getBaseline(cobblemonVersion);
+        if (baseline != null)
+            builder.append(row("prev", baseline.getValue()));
+        builder.append("```\n");
+        Runtime runtime = Runtime.getRuntime();
+        builder.append("Tick times in ms over the last 1, 5 and 15 minutes");
+        if (baseline != null)
+            builder.append(", prev is the last 15 minutes of Cobblemon ").append(baseline.getKey());
+        builder.append("\nMemory: ").append(longest.usedMemory() / (1024 * 1024)).append(" MB peak of ").append(runtime.maxMemory() / (1024 * 1024)).append(" MB")
+                .append("\nLoaded chunks: ").append(longest.meanChunks())
+                .append("\nPlayers: ").append(longest.maxPlayers()).append(" at most");
+        return builder.toString();
+    }
+
+    private static String row(String label, Summary summary) {
+        return String.format("%-4s %6.2f %7.2f %7.2f %7.2f %7.2f%n", label, summary.tps(), summary.p50Mspt(), summary.p95Mspt(), summary.p99Mspt(), summary.maxMspt());
+    }
+
+    /**
+     * Send a report on a fixed interval, replaces any previous schedule
+     * @param intervalMinutes Minutes between reports, 0 or less stops reporting
+     * @param report Builds and sends each report
+     */
+    public synchronized void scheduleReports(int intervalMinutes, Runnable report) {
+        stopReports();
+        if (intervalMinutes <= 0)
+            return;
+        reporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "CobblemonUpdater-HealthReport");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reporter.scheduleAtFixedRate(() -> {
+            try {
+                report.run();
+            } catch (Exception e) {
+                Logger.warn("Failed to send the server health report");
+                Logger.log(e);
+            }
+        }, intervalMinutes, intervalMinutes, TimeUnit.MINUTES);
+    }
+
+    public synchronized void stopReports() {
+        if (reporter != null) {
+            reporter.shutdownNow();
+            reporter = null;
+        }
+    }
+
+    /**
+     * Remember the last 15 minutes of the running Cobblemon version, called when the server stops
+     * @param cobblemonVersion The running Cobblemon version
+     */
+    public synchronized void saveBaseline(String cobblemonVersion) {
+        Summary summary = summarize(WINDOWS_SECONDS[WINDOWS_SECONDS.length - 1]);
+        if (summary == null || cobblemonVersion == null)
+            return;
+        Map<String, Summary> loaded = loadBaselines();
+        loaded.remove(cobblemonVersion);
+        loaded.put(cobblemonVersion, summary);
+        while (loaded.size() > MAX_BASELINES)
+            loaded.remove(loaded.keySet().iterator().next());
+        Gson gson = Adapters.PRETTY_MAIN_GSON;
+        try {
+            Path temp = baselineFile.resolveSibling(BASELINE_FILE + ".tmp");
+            try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                gson.toJson(loaded, writer);
+            }
+            Files.move(temp, baselineFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Logger.log(e);
+        }
+    }
+
+    /**
+     * @param cobblemonVersion The running Cobblemon version, or null for the most recent summary of any version
+     * @return The most recent summary of another Cobblemon version, or null if there is none
+     */
+    public synchronized Map.Entry<String, Summary> getBaseline(String cobblemonVersion) {
+        Map.Entry<String, Summary> latest = null;
+        for (Map.Entry<String, Summary> entry : loadBaselines().entrySet()) {
+            if (!entry.getKey().equals(cobblemonVersion))
+                latest = entry;
+        }
+        return latest;
+    }
+
+    private Map<String, Summary> loadBaselines() {
+        if (baselines != null)
+            return baselines;
+        baselines = new LinkedHashMap<>();
+        if (!Files.exists(baselineFile))
+            return baselines;
+        Gson gson = Adapters.PRETTY_MAIN_GSON;
+        try (Reader reader = Files.newBufferedReader(baselineFile, StandardCharsets.UTF_8)) {
+            Map<String, Summary> loaded = gson.fromJson(reader, new TypeToken<LinkedHashMap<String, Summary>>() {}.getType());
+            if (loaded != null)
+                baselines.putAll(loaded);
+        } catch (Exception e) {
+            Logger.warn("Failed to read the server health baselines");
+            Logger.log(e);
+        }
+        return baselines;
+    }
+}
@@ -0,0 +1,183 @@
+package io.github.adainish.cobblemonupdater.api.update;
+
+import io.github.adainish.cobblemonupdater.api.Logger;
+import io.github.adainish.cobblemonupdater.api.http.HrefExtractor;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Crawls an artefacts listing for Cobblemon jars.
+ * Version directories are fetched newest first with bounded parallelism, and directories
+ * that are for another Minecraft version or can't beat the best jar found so far are never fetched.
+ *
+ * @Author Adainish
+ */
+public class ArtefactCrawler
+{
+    // Matched against single href values produced by the HrefExtractor, never against whole pages
+    private static final Pattern ROOT_JAR_PATTERN = Pattern.compile("(Cobblemon-fabric-([\\d\\.]+)\\+([\\w\\.]+)\\.jar)");
+    // Match both with and without build suffix
+    private static final Pattern DIR_JAR_PATTERN = Pattern.compile("\\./(fabric-([\\d\\.]+)\\+([\\d\\.]+)(?:-[^\"/]+)?\\.jar)");
+
+    /**
+     * Fetches the body of a listing page
+     */
+    @FunctionalInterface
+    public interface Fetcher
+    {
+        String fetch(String url) throws IOException;
+    }
+
+    /**
+     * A version directory that has not been fetched yet
+     */
+    private record VersionDir(String name, CobblemonVersion version, String mcVersion) {
+    }
+
+    private final Fetcher fetcher;
+    private final int parallelism;
+
+    /**
+     * @param fetcher Used to fetch every listing page
+     * @param parallelism Maximum amount of directories fetched at the same time
+     */
+    public ArtefactCrawler(Fetcher fetcher, int parallelism) {
+        this.fetcher = fetcher;
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * Crawl a listing for jars
+     * @param listUrl The listing URL, ending with a slash
+     * @param mcVersion Only look for jars for this Minecraft version, or null for any version
+     * @return The jars that were found
+     * @throws IOException If the root listing could not be fetched
+     */
+    public JarIndex crawl(String listUrl, String mcVersion) throws IOException {
+        String root = fetcher.fetch(listUrl);
+        JarIndex index = new JarIndex();
+        HrefExtractor.extract(root, href -> {
+            Matcher jarMatcher = ROOT_JAR_PATTERN.matcher(href);
+            if (jarMatcher.matches())
+                index.add(new JarIndex.Jar(jarMatcher.group(1), listUrl + jarMatcher.group(1), jarMatcher.group(2), jarMatcher.group(3)));
+            return true;
+        });
+        if (!index.isEmpty()) {
+            Logger.debug(() -> "Found " + index.size() + " jars in the root listing of " + listUrl);
+            return index;
+        }
+
+        List<VersionDir> dirs = parseVersionDirs(root, mcVersion);
+        // Newest first, so the first directory with a jar bounds everything after it
+        dirs.sort((a, b) -> b.version().compareTo(a.version()));
+        Logger.debug(() -> dirs.size() + " version directories left to crawl in " + listUrl);
+        if (dirs.isEmpty())
+            return index;
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, dirs.size()), runnable -> {
+            Thread thread = new Thread(runnable, "CobblemonUpdater-Crawler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            int next = 0;
+            while (next < dirs.size()) {
+                JarIndex.Jar bestJar = index.best(mcVersion);
+                CobblemonVersion best = bestJar != null ? CobblemonVersion.of(bestJar.version()) : null;
+                List<Future<List<JarIndex.Jar>>> wave = new ArrayList<>();
+                while (next < dirs.size() && wave.size() < parallelism) {
+                    VersionDir dir = dirs.get(next);
+                    if (best != null && dir.version().compareIgnoringBuild(best) < 0) {
+                        int skipped = dirs.size() - next;
+                        Logger.debug(() -> "Skipping " + skipped + " older version directories");
+                        next = dirs.size();
+                        break;
+                    }
+                    wave.add(executor.submit(() -> crawlDir(listUrl + dir.name() + "/")));
+                    next++;
+                }
+                for (Future<List<JarIndex.Jar>> future : wave) {
+                    try {
+                        index.addAll(future.get());
+                    } catch (ExecutionException e) {
+                        Logger.debug(() -> "Failed to read directory - " + e.getCause().getMessage());
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while crawling " + listUrl, e);
+        } finally {
+            executor.shutdownNow();
+        }
+        return index;
+    }
+
+    private List<JarIndex.Jar> crawlDir(String dirUrl) throws IOException {
+        Logger.debug(() -> "Checking directory: " + dirUrl);
+        List<JarIndex.Jar> jars = new ArrayList<>();
+        HrefExtractor.extract(fetcher.fetch(dirUrl), href -> {
+            Matcher jarMatcher = DIR_JAR_PATTERN.matcher(href);
+            if (jarMatcher.matches()) {
+                String filename = jarMatcher.group(1);
+                JarIndex.Jar jar = new JarIndex.Jar(filename, dirUrl + filename, jarMatcher.group(2), jarMatcher.group(3));
+                Logger.debug(() -> "Matched jar: " + jar);
+                jars.add(jar);
+            }
+            return true;
+        });
+        return jars;
+    }
+
+    private List<VersionDir> parseVersionDirs(String listing, String mcVersion) {
+        List<VersionDir> dirs = new ArrayList<>();
+        for (String name : versionDirectories(listing)) {
+            int plusIndex = name.indexOf('+');
+            String dirMcVersion = plusIndex > 0 ? leadingVersion(name.substring(plusIndex + 1)) : null;
+            CobblemonVersion version = CobblemonVersion.of(plusIndex > 0 ? name.substring(0, plusIndex) : name);
+            if (version == null) {
+                Logger.debug(() -> "Ignoring directory that is not a version: " + name);
+                continue;
+            }
+            if (mcVersion != null && dirMcVersion != null && !dirMcVersion.isEmpty() && !dirMcVersion.equals(mcVersion)) {
+                Logger.trace(() -> "Pruned directory for another Minecraft version: " + name);
+                continue;
+            }
+            dirs.add(new VersionDir(name, version, dirMcVersion));
+        }
+        return dirs;
+    }
+
+    /**
+     * Get the names of the subdirectories linked from a listing, e.g. ./1.6.1+1.21.1/ gives 1.6.1+1.21.1
+     * @param listing The listing page
+     * @return The directory names in page order
+     */
+    public static List<String> versionDirectories(String listing) {
+        List<String> names = new ArrayList<>();
+        HrefExtractor.extract(listing, href -> {
+            if (href.length() > 3 && href.startsWith("./") && href.endsWith("/"))
+                names.add(href.substring(2, href.length() - 1));
+            return true;
+        });
+        return names;
+    }
+
+    /**
+     * Strip anything after the numeric part of a version, e.g. 1.21.1-SNAPSHOT becomes 1.21.1
+     */
+    private static String leadingVersion(String value) {
+        int end = 0;
+        while (end < value.length() && (Character.isDigit(value.charAt(end)) || value.charAt(end) == '.'))
+            end++;
+        return value.substring(0, end);
+    }
+}
@@ -0,0 +1,299 @@
+package io.github.adainish.cobblemonupdater.api.update;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import io.github.adainish.cobblemonupdater.api.Logger;
+import io.github.adainish.cobblemonupdater.config.Adapters;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * A local store of every Cobblemon jar the updater downloaded, so reinstalls and downgrades don't touch the network.
+ * Jars are stored once per SHA-256 and can be looked up by hash or by coordinate, a version such as 1.6.1+1.21.1
+ * or the URL they were requested from. The store tracks when each jar was last used and evicts the least recently
+ * used jars once it grows past its size limit.
+ *
+ * @Author Adainish
+ */
+public class ArtifactStore
+{
+    private static final String INDEX_FILE = "index.json";
+    private static final String URL_PREFIX = "url:";
+
+    /**
+     * A stored jar
+     */
+    public static class Entry
+    {
+        public String sha256;
+        public long size;
+        public long lastUsed;
+        public String fileName;
+        public List<String> coordinates = new ArrayList<>();
+    }
+
+    private final Path dir;
+    private final Path blobs;
+    private final Map<String, Entry> entries = new HashMap<>();
+    private final Map<String, String> coordinates = new HashMap<>();
+    private volatile long maxBytes;
+
+    /**
+     * @param dir Directory to keep the store in
+     * @param maxBytes Total size of the stored jars before the least recently used are evicted, 0 disables storing
+     */
+    public ArtifactStore(File dir, long maxBytes) {
+        this.dir = dir.toPath();
+        this.blobs = this.dir.resolve("blobs");
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Load the store index from disk, entries whose jar is missing are dropped
+     * @param dir Directory the store is kept in
+     * @param maxBytes Total size of the stored jars before the least recently used are evicted
+     * @return The loaded store
+     */
+    public static ArtifactStore load(File dir, long maxBytes) {
+        ArtifactStore store = new ArtifactStore(dir, maxBytes);
+        Path index = store.dir.resolve(INDEX_FILE);
+        if (!Files.exists(index))
+            return store;
+        Gson gson = Adapters.PRETTY_MAIN_GSON;
+        try (Reader reader = Files.newBufferedReader(index, StandardCharsets.UTF_8)) {
+            List<Entry> stored = gson.fromJson(reader, new TypeToken<List<Entry>>() {}.getType());
+            if (stored != null) {
+                for (Entry entry : stored) {
+                    if (entry == null || entry.sha256 == null || !Files.exists(store.blob(entry.sha256)))
+                        continue;
+                    if (entry.coordinates == null)
+                        entry.coordinates = new ArrayList<>();
+                    store.entries.put(entry.sha256, entry);
+                    entry.coordinates.forEach(coordinate -> store.coordinates.put(coordinate, entry.sha256));
+                }
+            }
+        } catch (Exception e) {
+            Logger.warn("Failed to read the artifact store index, starting with an empty store");
+            Logger.log(e);
+        }
+        return store;
+    }
+
+    public void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Get the coordinate of a Cobblemon build
+     * @param version The Cobblemon version, its build metadata is used as the Minecraft version when present
+     * @param mcVersion The Minecraft version to use when the version has no build metadata
+     * @return The coordinate, e.g. 1.6.1+1.21.1
+     */
+    public static String coordinate(String version, String mcVersion) {
+        CobblemonVersion parsed = CobblemonVersion.of(version);
+        if (parsed == null)
+            return mcVersion != null ? version + "+" + mcVersion : version;
+        String mc = parsed.getMinecraftVersion() != null ? parsed.getMinecraftVersion() : mcVersion;
+        return mc != null ? parsed.withoutBuild() + "+" + mc : parsed.withoutBuild();
+    }
+
+    /**
+     * Get the coordinate of a jar requested by URL
+     * @param url The URL
+     * @return The coordinate
+     */
+    public static String urlCoordinate(String url) {
+        return URL_PREFIX + url;
+    }
+
+    /**
+     * Snapshots are republished under the same version, so their coordinates can't be trusted to mean the same jar
+     * @param coordinate The coordinate
+     * @return Whether a stored jar may be served for it
+     */
+    public static boolean isStable(String coordinate) {
+        if (coordinate.startsWith(URL_PREFIX))
+            return true;
+        CobblemonVersion version = CobblemonVersion.of(coordinate);
+        return version != null && !version.isSnapshot();
+    }
+
+    /**
+     * Find a stored jar
+     * @param coordinate A version or URL coordinate
+     * @return The entry, or null if nothing is stored for it
+     */
+    public synchronized Entry find(String coordinate) {
+        String sha256 = coordinates.get(coordinate);
+        return sha256 != null ? findByHash(sha256) : null;
+    }
+
+    /**
+     * Find a stored jar by its hash
+     * @param sha256 The SHA-256 in lowercase hex
+     * @return The entry, or null if it is not stored
+     */
+    public synchronized Entry findByHash(String sha256) {
+        Entry entry = entries.get(sha256);
+        if (entry == null)
+            return null;
+        if (!Files.exists(blob(sha256))) {
+            remove(entry);
+            save();
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * Install a stored jar, by hard link where the file system allows it and by copy otherwise
+     * @param coordinate A version or URL coordinate
+     * @param target The file to install to, it is replaced if it exists
+     * @return The installed entry, or null if nothing usable is stored for the coordinate
+     */
+    public synchronized Entry install(String coordinate, Path target) {
+        if (!isStable(coordinate))
+            return null;
+        Entry entry = find(coordinate);
+        if (entry == null)
+            return null;
+        Path blob = blob(entry.sha256);
+        try {
+            if (Files.size(blob) != entry.size)
+                throw new IOException("Stored jar " + entry.sha256 + " has the wrong size");
+            Files.createDirectories(target.toAbsolutePath().getParent());
+            Files.deleteIfExists(target);
+            link(blob, target);
+        } catch (IOException e) {
+            Logger.warn("Failed to install " + coordinate + " from the artifact store: " + e.getMessage());
+            remove(entry);
+            save();
+            return null;
+        }
+        entry.lastUsed = System.currentTimeMillis();
+        save();
+        Logger.log("Installed " + coordinate + " from the artifact store");
+        return entry;
+    }
+
+    /**
+     * Store a jar, or mark it as used when it is already stored
+     * @param file The jar to store, it is left in place
+     * @param sha256 The SHA-256 of the jar in lowercase hex
+     * @param coordinates Version and URL coordinates that point to this jar
+     */
+    public synchronized void put(Path file, String sha256, String... coordinates) {
+        if (maxBytes <= 0 || sha256 == null)
+            return;
+        try {
+            Entry entry = entries.get(sha256);
+            Path blob = blob(sha256);
+            if (entry == null || !Files.exists(blob)) {
+                Files.createDirectories(blobs);
+                Path temp = blobs.resolve(sha256 + ".tmp");
+                Files.deleteIfExists(temp);
+                link(file, temp);
+                Files.move(temp, blob, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                entry = new Entry();
+                entry.sha256 = sha256;
+                entry.size = Files.size(blob);
+                entries.put(sha256, entry);
+            }
+            entry.fileName = file.getFileName().toString();
+            entry.lastUsed = System.currentTimeMillis();
+            for (String coordinate : coordinates) {
+                if (coordinate == null)
+                    continue;
+                // A coordinate points at one jar, a republished snapshot moves it to the new jar
+                String previous = this.coordinates.put(coordinate, sha256);
+                if (previous != null && !previous.equals(sha256) && entries.containsKey(previous))
+                    entries.get(previous).coordinates.remove(coordinate);
+                if (!entry.coordinates.contains(coordinate))
+                    entry.coordinates.add(coordinate);
+            }
+            evict(sha256);
+        } catch (IOException e) {
+            Logger.warn("Failed to add " + file.getFileName() + " to the artifact store: " + e.getMessage());
+        }
+        save();
+    }
+
+    /**
+     * @return The combined size of all stored jars
+     */
+    public synchronized long totalBytes() {
+        long total = 0;
+        for (Entry entry : entries.values())
+            total += entry.size;
+        return total;
+    }
+
+    public synchronized List<Entry> getEntries() {
+        return new ArrayList<>(entries.values());
+    }
+
+    /**
+     * Evict the least recently used jars until the store fits its size limit
+     * @param keep Hash of a jar that must not be evicted
+     */
+    private void evict(String keep) {
+        long total = totalBytes();
+        if (total <= maxBytes)
+            return;
+        List<Entry> byAge = new ArrayList<>(entries.values());
+        byAge.sort(Comparator.comparingLong(entry -> entry.lastUsed));
+        for (Entry entry : byAge) {
+            if (total <= maxBytes)
+                break;
+            if (entry.sha256.equals(keep))
+                continue;
+            try {
+                Files.deleteIfExists(blob(entry.sha256));
+            } catch (IOException e) {
+                Logger.warn("Failed to evict " + entry.sha256 + " from the artifact store: " + e.getMessage());
+                continue;
+            }
+            total -= entry.size;
+            remove(entry);
+            Logger.debug(() -> "Evicted " + entry.fileName + " (" + entry.sha256 + ") from the artifact store");
+        }
+    }
+
+    private void remove(Entry entry) {
+        entries.remove(entry.sha256);
+        entry.coordinates.forEach(coordinate -> coordinates.remove(coordinate, entry.sha256));
+    }
+
+    private Path blob(String sha256) {
+        return blobs.resolve(sha256 + ".jar");
+    }
+
+    private static void link(Path source, Path target) throws IOException {
+        try {
+            Files.createLink(target, source);
+        } catch (UnsupportedOperationException | IOException e) {
+            // Different file systems or no hard link support
+            Files.copy(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Write the index to disk
+     */
+    public synchronized void save() {
+        Gson gson = Adapters.PRETTY_MAIN_GSON;
+        try {
+            Files.createDirectories(dir);
+            Path temp = dir.resolve(INDEX_FILE + ".tmp");
+            try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                gson.toJson(new ArrayList<>(entries.values()), writer);
+            }
+            Files.move(temp, dir.resolve(INDEX_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Logger.log(e);
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package io.github.adainish.cobblemonupdater.api.update;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An immutable, pre-parsed Cobblemon version such as 1.6.1+1.21.1 or 1.7.0-SNAPSHOT+1.21.1.
+ * Numeric parts are kept as primitives and pre-release identifiers are split up front,
+ * so comparing two versions never allocates.
+ * <p>
+ * Ordering follows semantic versioning: numeric parts first, then a release sorts after its pre-releases,
+ * with SNAPSHOT builds after any other pre-release of the same version.
+ * The build metadata (the Minecraft version after the +) only breaks ties.
+ *
+ * @Author Adainish
+ */
+public final class CobblemonVersion implements Comparable<CobblemonVersion>
+{
+    private static final int MAX_INTERNED = 4096;
+    private static final Map<String, CobblemonVersion> INTERNED = new ConcurrentHashMap<>();
+    private static final int[] NO_PARTS = new int[0];
+    private static final String[] NO_IDENTIFIERS = new String[0];
+
+    private final String raw;
+    private final String withoutBuild;
+    private final int[] parts;
+    private final String[] preRelease;
+    /**
+     * Numeric value of each pre-release identifier, or -1 when it is not a number
+     */
+    private final long[] preReleaseNumbers;
+    private final boolean snapshot;
+    private final String build;
+    private final int[] buildParts;
+
+    private CobblemonVersion(String raw) {
+        this.raw = raw;
+        int plusIndex = raw.indexOf('+');
+        this.withoutBuild = plusIndex >= 0 ? raw.substring(0, plusIndex) : raw;
+        this.build = plusIndex >= 0 && plusIndex < raw.length() - 1 ? raw.substring(plusIndex + 1) : null;
+        int dashIndex = this.withoutBuild.indexOf('-');
+        String core = dashIndex >= 0 ? this.withoutBuild.substring(0, dashIndex) : this.withoutBuild;
+        this.parts = parseParts(core);
+        if (dashIndex >= 0 && dashIndex < this.withoutBuild.length() - 1) {
+            this.preRelease = this.withoutBuild.substring(dashIndex + 1).split("[.-]");
+            this.preReleaseNumbers = new long[this.preRelease.length];
+            boolean isSnapshot = false;
+            for (int i = 0; i < this.preRelease.length; i++) {
+                this.preReleaseNumbers[i] = parseNumber(this.preRelease[i]);
+                if (this.preRelease[i].equalsIgnoreCase("SNAPSHOT"))
+                    isSnapshot = true;
+            }
+            this.snapshot = isSnapshot;
+        } else {
+            this.preRelease = NO_IDENTIFIERS;
+            this.preReleaseNumbers = new long[0];
+            this.snapshot = false;
+        }
+        this.buildParts = this.build != null ? parseParts(this.build) : NO_PARTS;
+    }
+
+    /**
+     * Get the parsed version for a string, reusing an earlier parse when possible
+     * @param version The version string
+     * @return The parsed version, or null if the string does not start with a number
+     */
+    public static CobblemonVersion of(String version) {
+        if (version == null)
+            return null;
+        CobblemonVersion cached = INTERNED.get(version);
+        if (cached != null)
+            return cached;
+        CobblemonVersion parsed = parse(version);
+        if (parsed == null)
+            return null;
+        // Listings only ever hold a few hundred versions, this just keeps a bad page from growing the cache forever
+        if (INTERNED.size() >= MAX_INTERNED)
+            INTERNED.clear();
+        CobblemonVersion existing = INTERNED.putIfAbsent(version, parsed);
+        return existing != null ? existing : parsed;
+    }
+
+    /**
+     * Parse a version without interning it
+     * @param version The version string
+     * @return The parsed version, or null if the string does not start with a number
+     */
+    public static CobblemonVersion parse(String version) {
+        String trimmed = version.trim();
+        if (trimmed.isEmpty() || !Character.isDigit(trimmed.charAt(0)))
+            return null;
+        return new CobblemonVersion(trimmed);
+    }
+
+    /**
+     * Compare two version strings
+     * @param v1 The first version
+     * @param v2 The second version
+     * @return Negative, zero or positive like {@link Comparable#compareTo}, versions that can't be parsed sort first
+     */
+    public static int compare(String v1, String v2) {
+        CobblemonVersion a = of(v1);
+        CobblemonVersion b = of(v2);
+        if (a == null || b == null)
+            return a == null ? (b == null ? 0 : -1) : 1;
+        return a.compareTo(b);
+    }
+
+    @Override
+    public int compareTo(CobblemonVersion other) {
+        if (this == other)
+            return 0;
+        int result = compareParts(this.parts, other.parts);
+        if (result != 0)
+            return result;
+        result = comparePreRelease(other);
+        if (result != 0)
+            return result;
+        result = compareParts(this.buildParts, other.buildParts);
+        if (result != 0)
+            return result;
+        return this.raw.compareTo(other.raw);
+    }
+
+    /**
+     * Compare without the build metadata, so 1.6.1+1.21.1 and 1.6.1+1.20.1 are the same version
+     * @param other The version to compare to
+     * @return Negative, zero or positive like {@link Comparable#compareTo}
+     */
+    public int compareIgnoringBuild(CobblemonVersion other) {
+        int result = compareParts(this.parts, other.parts);
+        return result != 0 ? result : comparePreRelease(other);
+    }
+
+    private int comparePreRelease(CobblemonVersion other) {
+        boolean thisRelease = this.preRelease.length == 0;
+        boolean otherRelease = other.preRelease.length == 0;
+        if (thisRelease || otherRelease)
+            return Boolean.compare(thisRelease, otherRelease);
+        if (this.snapshot != other.snapshot)
+            return Boolean.compare(this.snapshot, other.snapshot);
+        int length = Math.min(this.preRelease.length, other.preRelease.length);
+        for (int i = 0; i < length; i++) {
+            long a = this.preReleaseNumbers[i];
+            long b = other.preReleaseNumbers[i];
+            int result;
+            if (a >= 0 && b >= 0)
+                result = Long.compare(a, b);
+            else if (a >= 0 || b >= 0)
+                // Numeric identifiers sort before alphanumeric ones
+                result = a >= 0 ? -1 : 1;
+            else result = this.preRelease[i].compareToIgnoreCase(other.preRelease[i]);
+            if (result != 0)
+                return result;
+        }
+        return Integer.compare(this.preRelease.length, other.preRelease.length);
+    }
+
+    private static int compareParts(int[] a, int[] b) {
+        int length = Math.max(a.length, b.length);
+        for (int i = 0; i < length; i++) {
+            int n1 = i < a.length ? a[i] : 0;
+            int n2 = i < b.length ? b[i] : 0;
+            if (n1 != n2)
+                return Integer.compare(n1, n2);
+        }
+        return 0;
+    }
+
+    /**
+     * Parse dot separated numbers, each part uses its leading digits so 1.21.1-pre1 becomes 1, 21, 1
+     */
+    private static int[] parseParts(String value) {
+        if (value.isEmpty())
+            return NO_PARTS;
+        int count = 1;
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) == '.')
+                count++;
+        }
+        int[] parsed = new int[count];
+        int part = 0;
+        int number = 0;
+        boolean inDigits = true;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '.') {
+                parsed[part++] = number;
+                number = 0;
+                inDigits = true;
+            } else if (inDigits && c >= '0' && c <= '9') {
+                number = number * 10 + (c - '0');
+            } else {
+                inDigits = false;
+            }
+        }
+        parsed[part] = number;
+        return parsed;
+    }
+
+    private static long parseNumber(String identifier) {
+        if (identifier.isEmpty() || identifier.length() > 18)
+            return -1;
+        long value = 0;
+        for (int i = 0; i < identifier.length(); i++) {
+            char c = identifier.charAt(i);
+            if (c < '0' || c > '9')
+                return -1;
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    /**
+     * @return The version without build metadata, e.g. 1.6.1 for 1.6.1+1.21.1
+     */
+    public String withoutBuild() {
+        return withoutBuild;
+    }
+
+    /**
+     * @return The build metadata, which for Cobblemon is the Minecraft version, or null if there is none
+     */
+    public String getMinecraftVersion() {
+        return build;
+    }
+
+    public boolean isSnapshot() {
+        return snapshot;
+    }
+
+    public boolean isPreRelease() {
+        return preRelease.length > 0;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+        return o instanceof CobblemonVersion other && this.raw.equals(other.raw);
+    }
+
+    @Override
+    public int hashCode() {
+        return raw.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return raw;
+    }
+
+    /**
+     * @return The numeric parts, copied
+     */
+    public int[] getParts() {
+        return Arrays.copyOf(parts, parts.length);
+    }
+}
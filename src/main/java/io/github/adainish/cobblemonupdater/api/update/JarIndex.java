@@ -0,0 +1,84 @@
+package io.github.adainish.cobblemonupdater.api.update;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The Cobblemon jars found while crawling an artefacts listing
+ *
+ * @Author Adainish
+ */
+public class JarIndex
+{
+    /**
+     * A single downloadable jar
+     *
+     * @param filename  File name as listed
+     * @param url       Absolute download URL
+     * @param version   Cobblemon version, without the Minecraft build metadata
+     * @param mcVersion Minecraft version the jar was built for
+     */
+    public record Jar(String filename, String url, String version, String mcVersion) {
+    }
+
+    private final List<Jar> jars = new ArrayList<>();
+
+    public void add(Jar jar) {
+        this.jars.add(jar);
+    }
+
+    public void addAll(List<Jar> jars) {
+        this.jars.addAll(jars);
+    }
+
+    public List<Jar> getJars() {
+        return Collections.unmodifiableList(this.jars);
+    }
+
+    public int size() {
+        return this.jars.size();
+    }
+
+    public boolean isEmpty() {
+        return this.jars.isEmpty();
+    }
+
+    /**
+     * Get the jars built for a Minecraft version
+     * @param mcVersion The Minecraft version, or null for all jars
+     * @return The matching jars
+     */
+    public List<Jar> forMinecraft(String mcVersion) {
+        if (mcVersion == null)
+            return getJars();
+        List<Jar> matching = new ArrayList<>();
+        for (Jar jar : this.jars) {
+            if (mcVersion.equals(jar.mcVersion()))
+                matching.add(jar);
+        }
+        return matching;
+    }
+
+    /**
+     * Get the highest Cobblemon version built for a Minecraft version
+     * @param mcVersion The Minecraft version, or null to ignore it
+     * @return The best jar, or null if there is none
+     */
+    public Jar best(String mcVersion) {
+        Jar best = null;
+        CobblemonVersion bestVersion = null;
+        for (Jar jar : this.jars) {
+            if (mcVersion != null && !mcVersion.equals(jar.mcVersion()))
+                continue;
+            CobblemonVersion version = CobblemonVersion.of(jar.version());
+            if (version == null)
+                continue;
+            if (best == null || version.compareTo(bestVersion) > 0) {
+                best = jar;
+                bestVersion = version;
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,369 @@
+package io.github.adainish.cobblemonupdater.api.update;
+
+import com.google.gson.Gson;
+import io.github.adainish.cobblemonupdater.api.Logger;
+import io.github.adainish.cobblemonupdater.config.Adapters;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Replaces the installed Cobblemon jar with a staged one so that mods/ always holds a Cobblemon jar, even if the server
+ * dies halfway through. New jars are downloaded into a staging directory and moved into mods/ with an atomic rename
+ * before the installed jars are moved to a retained directory, a jar with the same name is replaced by the rename itself.
+ * Every swap is written to a journal first, an interrupted swap is finished or undone when the mod initializes.
+ *
+ * @Author Adainish
+ */
+public class JarSwapper
+{
+    private static final String JOURNAL_FILE = "swap-journal.json";
+    private static final String MOD_ID = "cobblemon";
+
+    /**
+     * A swap in progress, written before mods/ is touched and removed once the swap is done
+     */
+    private static class Journal
+    {
+        String staged;
+        String target;
+        /**
+         * Whether a jar with the target name was installed, a copy of it is retained before it is replaced
+         */
+        boolean replacesInstalled;
+        List<String> retiring = new ArrayList<>();
+        long started;
+    }
+
+    /**
+     * A retained jar that can be rolled back to
+     *
+     * @param file    The retained jar
+     * @param version The Cobblemon version it declares
+     */
+    public record RetainedJar(Path file, String version) {
+    }
+
+    private final Path modsDir;
+    private final Path stagingDir;
+    private final Path retainedDir;
+    private final Path journalFile;
+    private volatile int retainedJars;
+
+    /**
+     * @param modsDir      The mods directory of the server
+     * @param dataDir      Directory to keep the staging and retained directories and the journal in
+     * @param retainedJars How many replaced jars to keep for rollbacks
+     */
+    public JarSwapper(Path modsDir, File dataDir, int retainedJars) {
+        this.modsDir = modsDir;
+        this.stagingDir = dataDir.toPath().resolve("staging");
+        this.retainedDir = dataDir.toPath().resolve("retained");
+        this.journalFile = dataDir.toPath().resolve(JOURNAL_FILE);
+        this.retainedJars = Math.max(1, retainedJars);
+    }
+
+    public void setRetainedJars(int retainedJars) {
+        this.retainedJars = Math.max(1, retainedJars);
+    }
+
+    /**
+     * @return The directory jars should be downloaded into before they are swapped in
+     * @throws IOException If the directory could not be created
+     */
+    public Path getStagingDir() throws IOException {
+        Files.createDirectories(stagingDir);
+        return stagingDir;
+    }
+
+    /**
+     * Install a staged jar, the Cobblemon jars currently in mods/ are moved to the retained directory
+     * @param staged The jar to install, normally in the staging directory
+     * @param fileName The name to give it in mods/
+     * @return The installed jar
+     * @throws IOException If the swap failed, mods/ is left with either the old or the new jar
+     */
+    public synchronized Path swap(Path staged, String fileName) throws IOException {
+        Files.createDirectories(stagingDir);
+        Files.createDirectories(retainedDir);
+        Files.createDirectories(modsDir);
+        Path stagedFile = stagingDir.resolve(fileName);
+        if (!staged.toAbsolutePath().normalize().equals(stagedFile.toAbsolutePath().normalize()))
+            moveAtomically(staged, stagedFile);
+
+        Journal journal = new Journal();
+        journal.staged = fileName;
+        journal.target = fileName;
+        journal.started = System.currentTimeMillis();
+        for (Path installed : installedJars()) {
+            String name = installed.getFileName().toString();
+            if (!name.equals(fileName))
+                journal.retiring.add(name);
+        }
+        Path target = modsDir.resolve(fileName);
+        if (Files.exists(target)) {
+            // The rename replaces the installed jar, keep a copy of it so the reinstall can be rolled back
+            journal.replacesInstalled = true;
+            Path retained = retainedDir.resolve(fileName);
+            copyAtomically(target, retained);
+            Files.setLastModifiedTime(retained, FileTime.fromMillis(System.currentTimeMillis()));
+        }
+        writeJournal(journal);
+
+        try {
+            complete(journal);
+        } catch (IOException e) {
+            // Put back what was already retired, the staged jar stays in staging for another attempt
+            Logger.warn("Failed to swap in " + fileName + ", restoring the installed jar: " + e.getMessage());
+            rollBackJournal(journal);
+            throw e;
+        }
+        return modsDir.resolve(fileName);
+    }
+
+    /**
+     * Finish or undo a swap that was interrupted by a crash, should be called before any new swap
+     */
+    public synchronized void recover() {
+        Journal journal = readJournal();
+        if (journal == null)
+            return;
+        Logger.warn("Found an interrupted Cobblemon jar swap from " + new Date(journal.started) + ", recovering");
+        try {
+            if (Files.exists(stagingDir.resolve(journal.staged))) {
+                complete(journal);
+                Logger.warn("Finished installing " + journal.target + ", restart the server to load it");
+            } else if (Files.exists(modsDir.resolve(journal.target))) {
+                // The new jar is in, only retiring the old jars was interrupted
+                complete(journal);
+            } else {
+                rollBackJournal(journal);
+                Logger.warn("The staged jar " + journal.staged + " is gone, restored the previous Cobblemon jar");
+            }
+        } catch (IOException e) {
+            Logger.error("Failed to recover the interrupted Cobblemon jar swap: " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return The retained jars, newest first
+     */
+    public synchronized List<RetainedJar> getRetained() {
+        List<RetainedJar> retained = new ArrayList<>();
+        for (Path file : listByAge(retainedDir)) {
+            try {
+                ModJarValidator.ModInfo info = ModJarValidator.read(file);
+                if (MOD_ID.equals(info.id()))
+                    retained.add(new RetainedJar(file, info.version()));
+            } catch (IOException e) {
+                Logger.debug(() -> "Ignoring unreadable retained jar " + file.getFileName() + ": " + e.getMessage());
+            }
+        }
+        return retained;
+    }
+
+    /**
+     * Find the retained jar to roll back to
+     * @param version The Cobblemon version to roll back to, build metadata is ignored, or null for the newest retained jar
+     * @return The retained jar, or null if none matches
+     */
+    public RetainedJar findRetained(String version) {
+        CobblemonVersion wanted = version != null ? CobblemonVersion.of(version) : null;
+        for (RetainedJar jar : getRetained()) {
+            if (version == null)
+                return jar;
+            CobblemonVersion actual = CobblemonVersion.of(jar.version());
+            if (wanted != null && actual != null && wanted.compareIgnoringBuild(actual) == 0)
+                return jar;
+        }
+        return null;
+    }
+
+    /**
+     * Swap a retained jar back in, the jar it replaces is retained in turn so a rollback can be undone
+     * @param jar The retained jar
+     * @return The installed jar
+     * @throws IOException If the swap failed
+     */
+    public synchronized Path rollback(RetainedJar jar) throws IOException {
+        String fileName = jar.file().getFileName().toString();
+        Path staged = getStagingDir().resolve(fileName);
+        moveAtomically(jar.file(), staged);
+        try {
+            return swap(staged, fileName);
+        } catch (IOException e) {
+            if (Files.exists(staged))
+                moveAtomically(staged, jar.file());
+            throw e;
+        }
+    }
+
+    /**
+     * @return The Cobblemon jars in mods/
+     */
+    public List<Path> installedJars() throws IOException {
+        List<Path> installed = new ArrayList<>();
+        if (!Files.isDirectory(modsDir))
+            return installed;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(modsDir, "*.jar")) {
+            for (Path path : stream) {
+                if (isCobblemonJar(path))
+                    installed.add(path);
+            }
+        }
+        return installed;
+    }
+
+    private static boolean isCobblemonJar(Path path) {
+        if (path.getFileName().toString().startsWith("Cobblemon-fabric-"))
+            return true;
+        try {
+            return MOD_ID.equals(ModJarValidator.read(path).id());
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Move the staged jar in and then retire the jars in the journal, so mods/ holds a Cobblemon jar after every step.
+     * Every step can be repeated after a crash.
+     */
+    private void complete(Journal journal) throws IOException {
+        Path staged = stagingDir.resolve(journal.staged);
+        if (Files.exists(staged))
+            moveAtomically(staged, modsDir.resolve(journal.target));
+        for (String name : journal.retiring) {
+            Path installed = modsDir.resolve(name);
+            if (!Files.exists(installed))
+                continue;
+            Path retained = retainedDir.resolve(name);
+            moveAtomically(installed, retained);
+            Files.setLastModifiedTime(retained, FileTime.fromMillis(System.currentTimeMillis()));
+        }
+        deleteJournal();
+        prune();
+        Logger.log("Installed " + journal.target + ", retained " + journal.retiring);
+    }
+
+    private void rollBackJournal(Journal journal) throws IOException {
+        Path target = modsDir.resolve(journal.target);
+        Path staged = stagingDir.resolve(journal.staged);
+        if (Files.exists(target) && !Files.exists(staged)) {
+            // The new jar made it in, put it back in staging or restore the jar it replaced
+            Path replaced = retainedDir.resolve(journal.target);
+            if (journal.replacesInstalled && Files.exists(replaced))
+                copyAtomically(replaced, target);
+            else moveAtomically(target, staged);
+        }
+        for (String name : journal.retiring) {
+            Path retained = retainedDir.resolve(name);
+            if (Files.exists(retained) && !Files.exists(modsDir.resolve(name)))
+                moveAtomically(retained, modsDir.resolve(name));
+        }
+        deleteJournal();
+    }
+
+    /**
+     * Delete all but the newest retained jars
+     */
+    private void prune() {
+        List<Path> retained = listByAge(retainedDir);
+        for (int i = retainedJars; i < retained.size(); i++) {
+            Path old = retained.get(i);
+            try {
+                Files.deleteIfExists(old);
+                Logger.debug(() -> "Deleted retained jar " + old.getFileName());
+            } catch (IOException e) {
+                Logger.warn("Failed to delete retained jar " + old.getFileName() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private static List<Path> listByAge(Path dir) {
+        List<Path> files = new ArrayList<>();
+        if (!Files.isDirectory(dir))
+            return files;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "*.jar")) {
+            stream.forEach(files::add);
+        } catch (IOException e) {
+            Logger.log(e);
+        }
+        files.sort(Comparator.comparing(JarSwapper::lastModified).reversed());
+        return files;
+    }
+
+    private static FileTime lastModified(Path path) {
+        try {
+            return Files.getLastModifiedTime(path);
+        } catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+
+    /**
+     * Move a file with a single rename. Across file systems the file is copied next to the target first, so the target
+     * still only ever appears complete.
+     */
+    private static void moveAtomically(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            // Not a .jar, so the mod loader skips it if the server dies before the rename
+            Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+            Files.copy(source, temp, StandardCopyOption.REPLACE_EXISTING);
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            Files.delete(source);
+        }
+    }
+
+    /**
+     * Copy a file next to the target and rename it into place, the target is never seen half written
+     */
+    private static void copyAtomically(Path source, Path target) throws IOException {
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        Files.copy(source, temp, StandardCopyOption.REPLACE_EXISTING);
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private void writeJournal(Journal journal) throws IOException {
+        Gson gson = Adapters.PRETTY_MAIN_GSON;
+        Path temp = journalFile.resolveSibling(JOURNAL_FILE + ".tmp");
+        try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            gson.toJson(journal, writer);
+        }
+        Files.move(temp, journalFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private Journal readJournal() {
+        if (!Files.exists(journalFile))
+            return null;
+        Gson gson = Adapters.PRETTY_MAIN_GSON;
+        try (Reader reader = Files.newBufferedReader(journalFile, StandardCharsets.UTF_8)) {
+            Journal journal = gson.fromJson(reader, Journal.class);
+            if (journal == null || journal.staged == null || journal.target == null) {
+                Logger.warn("Ignoring an unreadable Cobblemon jar swap journal");
+                deleteJournal();
+                return null;
+            }
+            if (journal.retiring == null)
+                journal.retiring = new ArrayList<>();
+            return journal;
+        } catch (Exception e) {
+            Logger.warn("Ignoring an unreadable Cobblemon jar swap journal: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void deleteJournal() throws IOException {
+        Files.deleteIfExists(journalFile);
+    }
+}
@@ -0,0 +1,302 @@
+package io.github.adainish.cobblemonupdater.api.update;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import io.github.adainish.cobblemonupdater.api.Logger;
+import net.fabricmc.loader.api.Version;
+import net.fabricmc.loader.api.VersionParsingException;
+import net.fabricmc.loader.api.metadata.version.VersionPredicate;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Checks that a downloaded jar really is the Cobblemon build it claims to be before it replaces the installed one.
+ * Only the end of the archive, the central directory and fabric.mod.json are read, no other entry is inflated.
+ *
+ * @Author Adainish
+ */
+public final class ModJarValidator
+{
+    private static final String MOD_ID = "cobblemon";
+    private static final String MOD_JSON = "fabric.mod.json";
+
+    private static final int EOCD_SIGNATURE = 0x06054b50;
+    private static final int EOCD_SIZE = 22;
+    private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+    private static final int ZIP64_EOCD_SIGNATURE = 0x06064b50;
+    private static final int CENTRAL_SIGNATURE = 0x02014b50;
+    private static final int LOCAL_SIGNATURE = 0x04034b50;
+    private static final int MAX_COMMENT = 0xFFFF;
+    /**
+     * fabric.mod.json is a few kilobytes, anything claiming to be larger is not a mod jar we want
+     */
+    private static final long MAX_MOD_JSON_SIZE = 1024 * 1024;
+    /**
+     * Cobblemon's central directory is around a megabyte, this leaves plenty of room
+     */
+    private static final long MAX_DIRECTORY_SIZE = 64 * 1024 * 1024;
+
+    /**
+     * The identity of a mod jar, as read from its fabric.mod.json
+     *
+     * @param id               The mod id
+     * @param version          The mod version
+     * @param minecraftRanges  The version ranges of the minecraft dependency, empty if it does not declare one
+     */
+    public record ModInfo(String id, String version, List<String> minecraftRanges) {
+    }
+
+    /**
+     * A jar that is not the expected Cobblemon build
+     */
+    public static class InvalidModJarException extends IOException
+    {
+        public InvalidModJarException(String message) {
+            super(message);
+        }
+    }
+
+    private ModJarValidator() {
+    }
+
+    /**
+     * Validate a downloaded Cobblemon jar
+     * @param jar The jar to check
+     * @param expectedVersion The Cobblemon version it should be, build metadata is ignored, or null to accept any version
+     * @param minecraftVersion The Minecraft version the server runs, or null to skip the dependency check
+     * @return What the jar declares
+     * @throws InvalidModJarException If the jar is not Cobblemon, is another version or does not support the Minecraft version
+     * @throws IOException If the jar could not be read
+     */
+    public static ModInfo validate(Path jar, String expectedVersion, String minecraftVersion) throws IOException {
+        long started = System.nanoTime();
+        ModInfo info = read(jar);
+        if (!MOD_ID.equals(info.id()))
+            throw new InvalidModJarException("Jar is the mod '" + info.id() + "', not " + MOD_ID);
+
+        if (expectedVersion != null) {
+            CobblemonVersion expected = CobblemonVersion.of(expectedVersion);
+            CobblemonVersion actual = CobblemonVersion.of(info.version());
+            if (expected == null || actual == null || expected.compareIgnoringBuild(actual) != 0)
+                throw new InvalidModJarException("Jar is Cobblemon " + info.version() + ", expected " + expectedVersion);
+        }
+
+        if (minecraftVersion != null && !minecraftVersion.equals("unknown") && !info.minecraftRanges().isEmpty()) {
+            if (!supportsMinecraft(info.minecraftRanges(), minecraftVersion))
+                throw new InvalidModJarException("Cobblemon " + info.version() + " requires Minecraft " + String.join(" or ", info.minecraftRanges()) +
+                        ", but the server is running Minecraft " + minecraftVersion);
+        }
+        Logger.debug(() -> "Validated " + jar.getFileName() + " as Cobblemon " + info.version() + " in " + (System.nanoTime() - started) / 1000 + "us");
+        return info;
+    }
+
+    /**
+     * Read the identity of a mod jar
+     * @param jar The jar to read
+     * @return What its fabric.mod.json declares
+     * @throws InvalidModJarException If the file is not a zip or has no usable fabric.mod.json
+     * @throws IOException If the jar could not be read
+     */
+    public static ModInfo read(Path jar) throws IOException {
+        String json = readModJson(jar);
+        JsonObject root;
+        try {
+            root = JsonParser.parseString(json).getAsJsonObject();
+        } catch (RuntimeException e) {
+            throw new InvalidModJarException(MOD_JSON + " is not valid JSON: " + e.getMessage());
+        }
+        String id = stringOrNull(root.get("id"));
+        String version = stringOrNull(root.get("version"));
+        if (id == null || version == null)
+            throw new InvalidModJarException(MOD_JSON + " does not declare an id and version");
+
+        List<String> ranges = new ArrayList<>();
+        JsonElement depends = root.get("depends");
+        if (depends != null && depends.isJsonObject()) {
+            JsonElement minecraft = depends.getAsJsonObject().get("minecraft");
+            if (minecraft != null && minecraft.isJsonArray()) {
+                for (JsonElement element : (JsonArray) minecraft) {
+                    String range = stringOrNull(element);
+                    if (range != null)
+                        ranges.add(range);
+                }
+            } else {
+                String range = stringOrNull(minecraft);
+                if (range != null)
+                    ranges.add(range);
+            }
+        }
+        return new ModInfo(id, version, ranges);
+    }
+
+    /**
+     * A dependency on a list of ranges is met when any of them matches
+     */
+    private static boolean supportsMinecraft(List<String> ranges, String minecraftVersion) throws InvalidModJarException {
+        Version version;
+        try {
+            version = Version.parse(minecraftVersion);
+        } catch (VersionParsingException e) {
+            Logger.warn("Unable to parse the Minecraft version " + minecraftVersion + ", skipping the dependency check");
+            return true;
+        }
+        for (String range : ranges) {
+            try {
+                if (VersionPredicate.parse(range).test(version))
+                    return true;
+            } catch (VersionParsingException e) {
+                throw new InvalidModJarException("Invalid minecraft dependency '" + range + "' in " + MOD_JSON);
+            }
+        }
+        return false;
+    }
+
+    private static String readModJson(Path jar) throws IOException {
+        // Positional reads into heap buffers rather than a mapping, which would hold the file open until it is
+        // garbage collected and make moving or deleting the jar fail on Windows
+        try (FileChannel channel = FileChannel.open(jar, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < EOCD_SIZE)
+                throw new InvalidModJarException("File is too small to be a jar");
+            try {
+                return readModJson(channel, size);
+            } catch (IndexOutOfBoundsException | IllegalArgumentException e) {
+                throw new InvalidModJarException("Jar is truncated or corrupt");
+            }
+        }
+    }
+
+    private static String readModJson(FileChannel channel, long size) throws IOException {
+        long eocd = findEndOfCentralDirectory(channel, size);
+        ByteBuffer end = readAt(channel, size, eocd, EOCD_SIZE);
+        long entries = end.getShort(10) & 0xFFFFL;
+        long directorySize = end.getInt(12) & 0xFFFFFFFFL;
+        long directoryOffset = end.getInt(16) & 0xFFFFFFFFL;
+        if (entries == 0xFFFF || directorySize == 0xFFFFFFFFL || directoryOffset == 0xFFFFFFFFL) {
+            // Zip64, the real values are in the zip64 end of central directory record
+            if (eocd < 20)
+                throw new InvalidModJarException("Jar has an invalid zip64 directory");
+            ByteBuffer locator = readAt(channel, size, eocd - 20, 20);
+            if (locator.getInt(0) != ZIP64_LOCATOR_SIGNATURE)
+                throw new InvalidModJarException("Jar has an invalid zip64 directory");
+            ByteBuffer zip64 = readAt(channel, size, locator.getLong(8), 56);
+            if (zip64.getInt(0) != ZIP64_EOCD_SIGNATURE)
+                throw new InvalidModJarException("Jar has an invalid zip64 directory");
+            entries = zip64.getLong(32);
+            directorySize = zip64.getLong(40);
+            directoryOffset = zip64.getLong(48);
+        }
+        if (directorySize > MAX_DIRECTORY_SIZE)
+            throw new InvalidModJarException("Jar has a central directory of " + directorySize + " bytes, it is not a Cobblemon jar");
+
+        byte[] wanted = MOD_JSON.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer directory = readAt(channel, size, directoryOffset, (int) directorySize);
+        int position = 0;
+        for (long i = 0; i < entries; i++) {
+            if (directory.getInt(position) != CENTRAL_SIGNATURE)
+                throw new InvalidModJarException("Jar has a corrupt central directory");
+            int method = directory.getShort(position + 10) & 0xFFFF;
+            long compressedSize = directory.getInt(position + 20) & 0xFFFFFFFFL;
+            long uncompressedSize = directory.getInt(position + 24) & 0xFFFFFFFFL;
+            int nameLength = directory.getShort(position + 28) & 0xFFFF;
+            int extraLength = directory.getShort(position + 30) & 0xFFFF;
+            int commentLength = directory.getShort(position + 32) & 0xFFFF;
+            long localOffset = directory.getInt(position + 42) & 0xFFFFFFFFL;
+            if (nameEquals(directory, position + 46, nameLength, wanted)) {
+                if (compressedSize == 0xFFFFFFFFL || uncompressedSize == 0xFFFFFFFFL || localOffset == 0xFFFFFFFFL)
+                    throw new InvalidModJarException(MOD_JSON + " is too large");
+                return readEntry(channel, size, method, compressedSize, uncompressedSize, localOffset);
+            }
+            position += 46 + nameLength + extraLength + commentLength;
+        }
+        throw new InvalidModJarException("Jar has no " + MOD_JSON + ", it is not a Fabric mod");
+    }
+
+    private static long findEndOfCentralDirectory(FileChannel channel, long size) throws IOException {
+        // The record is followed by a comment of at most 64 KiB, so only the tail of the file has to be searched
+        int length = (int) Math.min(size, EOCD_SIZE + MAX_COMMENT);
+        long tailStart = size - length;
+        ByteBuffer tail = readAt(channel, size, tailStart, length);
+        for (int position = length - EOCD_SIZE; position >= 0; position--) {
+            if (tail.getInt(position) == EOCD_SIGNATURE)
+                return tailStart + position;
+        }
+        throw new InvalidModJarException("File is not a jar");
+    }
+
+    private static String readEntry(FileChannel channel, long size, int method, long compressedSize, long uncompressedSize, long localOffset) throws IOException {
+        if (uncompressedSize > MAX_MOD_JSON_SIZE || compressedSize > MAX_MOD_JSON_SIZE)
+            throw new InvalidModJarException(MOD_JSON + " is too large");
+        ByteBuffer local = readAt(channel, size, localOffset, 30);
+        if (local.getInt(0) != LOCAL_SIGNATURE)
+            throw new InvalidModJarException("Jar has a corrupt entry for " + MOD_JSON);
+        int nameLength = local.getShort(26) & 0xFFFF;
+        int extraLength = local.getShort(28) & 0xFFFF;
+        long dataStart = localOffset + 30 + nameLength + extraLength;
+        byte[] compressed = readAt(channel, size, dataStart, (int) compressedSize).array();
+
+        if (method == 0)
+            return new String(compressed, StandardCharsets.UTF_8);
+        if (method != 8)
+            throw new InvalidModJarException(MOD_JSON + " uses an unsupported compression method " + method);
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(compressed);
+            byte[] inflated = new byte[(int) uncompressedSize];
+            int length = 0;
+            while (length < inflated.length && !inflater.finished()) {
+                int read = inflater.inflate(inflated, length, inflated.length - length);
+                if (read == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+                    break;
+                length += read;
+            }
+            if (length != inflated.length)
+                throw new InvalidModJarException(MOD_JSON + " is truncated");
+            return new String(inflated, StandardCharsets.UTF_8);
+        } catch (DataFormatException e) {
+            throw new InvalidModJarException(MOD_JSON + " is corrupt: " + e.getMessage());
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Read a range of the file into a little endian heap buffer
+     */
+    private static ByteBuffer readAt(FileChannel channel, long size, long offset, int length) throws IOException {
+        if (offset < 0 || length < 0 || offset + length > size)
+            throw new InvalidModJarException("Jar has an offset outside of the file");
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0)
+                throw new InvalidModJarException("Jar is truncated");
+        }
+        return buffer.clear();
+    }
+
+    private static boolean nameEquals(ByteBuffer buffer, int position, int length, byte[] wanted) {
+        if (length != wanted.length)
+            return false;
+        for (int i = 0; i < length; i++) {
+            if (buffer.get(position + i) != wanted[i])
+                return false;
+        }
+        return true;
+    }
+
+    private static String stringOrNull(JsonElement element) {
+        return element != null && element.isJsonPrimitive() ? element.getAsString() : null;
+    }
+}
@@ -0,0 +1,17 @@
+package io.github.adainish.cobblemonupdater.api.update;
+
+import java.nio.file.Path;
+
+/**
+ * A Cobblemon jar that has been downloaded and validated and waits in the staging directory to be swapped in
+ *
+ * @param version  The Cobblemon version of the jar
+ * @param snapshot Whether it came from the snapshot track
+ * @param file     The staged jar
+ * @param fileName The name it gets in mods/
+ * @param stagedAt When it was staged, in epoch milliseconds
+ * @Author Adainish
+ */
+public record StagedUpdate(String version, boolean snapshot, Path file, String fileName, long stagedAt)
+{
+}
@@ -0,0 +1,208 @@
+package io.github.adainish.cobblemonupdater.api.update;
+
+import com.google.gson.Gson;
+import io.github.adainish.cobblemonupdater.Cobblemonupdater;
+import io.github.adainish.cobblemonupdater.api.Logger;
+import io.github.adainish.cobblemonupdater.api.discord.DiscordBot;
+import io.github.adainish.cobblemonupdater.config.Adapters;
+import io.github.adainish.cobblemonupdater.config.Config;
+
+import java.awt.*;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically checks the artefacts listings for new Cobblemon builds
+ * and announces each new version once to the configured channel.
+ * The last announced version of each track is persisted so restarts don't announce it again.
+ *
+ * @Author Adainish
+ */
+public class VersionPoller
+{
+    private static final String STATE_FILE = "poller-state.json";
+
+    /**
+     * The last version seen on each track
+     */
+    public static class State
+    {
+        public String lastRelease;
+        public String lastSnapshot;
+    }
+
+    private final DiscordBot bot;
+    private final long intervalMillis;
+    private final long jitterMillis;
+    private final boolean pollReleases;
+    private final boolean pollSnapshots;
+    private final File stateFile;
+    private final ScheduledExecutorService scheduler;
+    private State state;
+    private volatile boolean running = false;
+
+    /**
+     * Create a poller using the settings from the config
+     * @param bot The bot to announce through
+     * @param config The loaded config
+     */
+    public VersionPoller(DiscordBot bot, Config config) {
+        this.bot = bot;
+        this.intervalMillis = Math.max(30, config.pollIntervalSeconds) * 1000L;
+        this.jitterMillis = Math.max(0, config.pollJitterSeconds) * 1000L;
+        this.pollReleases = config.pollReleases;
+        this.pollSnapshots = config.pollSnapshots;
+        this.stateFile = new File(Cobblemonupdater.getConfigDir(), STATE_FILE);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "CobblemonUpdater-VersionPoller");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Start polling, the first poll happens after one interval
+     */
+    public void start() {
+        if (running)
+            return;
+        if (!pollReleases && !pollSnapshots) {
+            Logger.log("Version poller has no tracks enabled, not starting");
+            return;
+        }
+        running = true;
+        this.state = loadState();
+        scheduleNext();
+        Logger.log("Version poller started, checking every " + (intervalMillis / 1000) + " seconds");
+    }
+
+    /**
+     * Stop polling
+     */
+    public void stop() {
+        running = false;
+        scheduler.shutdownNow();
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void scheduleNext() {
+        if (!running)
+            return;
+        // Jitter spreads the requests of servers that were started at the same time
+        long jitter = jitterMillis > 0 ? ThreadLocalRandom.current().nextLong(-jitterMillis, jitterMillis + 1) : 0;
+        long delay = Math.max(1000, intervalMillis + jitter);
+        scheduler.schedule(this::pollAndReschedule, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void pollAndReschedule() {
+        try {
+            poll();
+        } catch (Exception e) {
+            Logger.warn("Version poll failed");
+            Logger.log(e);
+        } finally {
+            scheduleNext();
+        }
+    }
+
+    /**
+     * Check both tracks once, announce anything new and stage it for /updatecobblemon
+     */
+    public void poll() {
+        boolean changed = false;
+        if (pollReleases) {
+            String latest = bot.refreshLatestCobblemonVersion(false);
+            if (isNewVersion(latest, state.lastRelease)) {
+                announce(false, latest, state.lastRelease);
+                state.lastRelease = latest;
+                changed = true;
+            }
+        }
+        if (pollSnapshots) {
+            String latest = bot.refreshLatestCobblemonVersion(true);
+            if (isNewVersion(latest, state.lastSnapshot)) {
+                announce(true, latest, state.lastSnapshot);
+                state.lastSnapshot = latest;
+                changed = true;
+            }
+        }
+        if (changed)
+            saveState();
+        if (pollReleases)
+            bot.prestageUpdate(false);
+        if (pollSnapshots)
+            bot.prestageUpdate(true);
+    }
+
+    private boolean isNewVersion(String latest, String previous) {
+        // Lookups report failures as text rather than versions
+        if (latest == null || latest.isEmpty() || !Character.isDigit(latest.charAt(0)))
+            return false;
+        int compared = CobblemonVersion.compare(latest, previous);
+        // An outdated mirror or cached listing can report an older build, that is not news
+        if (compared < 0)
+            Logger.debug(() -> "Ignoring " + latest + ", it is older than the known " + previous);
+        return compared > 0;
+    }
+
+    private void announce(boolean snapshot, String version, String previous) {
+        if (previous == null) {
+            // First time this track is seen, remember it without announcing an old build
+            Logger.log("Version poller now tracking " + (snapshot ? "snapshot " : "release ") + version);
+            return;
+        }
+        Config config = Cobblemonupdater.config;
+        if (config == null || config.channelID == null || config.channelID.isEmpty()) {
+            Logger.log("New Cobblemon " + (snapshot ? "snapshot" : "release") + " " + version + " found, but no channel is configured");
+            return;
+        }
+        Logger.log("Announcing new Cobblemon " + (snapshot ? "snapshot" : "release") + " " + version);
+        bot.broadcast(
+                snapshot ? "New Cobblemon snapshot available" : "New Cobblemon release available",
+                "Cobblemon " + version + " has been published (previously " + previous + ").\n" +
+                        "Current server version: " + bot.getCurrentCobblemonVersion(),
+                config.channelID,
+                false,
+                Color.GREEN);
+    }
+
+    private State loadState() {
+        if (!stateFile.exists())
+            return new State();
+        Gson gson = Adapters.PRETTY_MAIN_GSON;
+        try (Reader reader = new InputStreamReader(new FileInputStream(stateFile), StandardCharsets.UTF_8)) {
+            State loaded = gson.fromJson(reader, State.class);
+            return loaded != null ? loaded : new State();
+        } catch (Exception e) {
+            Logger.warn("Failed to read the version poller state");
+            Logger.log(e);
+            return new State();
+        }
+    }
+
+    private void saveState() {
+        Gson gson = Adapters.PRETTY_MAIN_GSON;
+        // Write next to the state and move it over, so a crash mid write can't leave a truncated file
+        File temp = new File(stateFile.getParentFile(), stateFile.getName() + ".tmp");
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(temp), StandardCharsets.UTF_8)) {
+            gson.toJson(state, writer);
+        } catch (IOException e) {
+            Logger.log(e);
+            return;
+        }
+        try {
+            Files.move(temp.toPath(), stateFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Logger.log(e);
+        }
+    }
+}
@@ -13,6 +13,47 @@ public class Config
     public String botToken;
     public String channelID;
     public String cobblemonUpdateURL;
+    public int discordReadyTimeoutSeconds;
+    public boolean discordLeanProfile;
+    public int discordCoalesceMillis;
+    public int discordDrainTimeoutSeconds;
+    public int dmChannelCacheSize;
+    public int dmChannelCacheMinutes;
+    public int httpConnectTimeoutSeconds;
+    public int httpRequestTimeoutSeconds;
+    public int httpMaxRetries;
+    public int httpReadIdleTimeoutSeconds;
+    public long httpRetryBackoffMillis;
+    public int httpCacheTtlSeconds;
+    public int httpCacheMaxStaleMinutes;
+    public int lookupTimeoutSeconds;
+    public boolean pollerEnabled;
+    public int pollIntervalSeconds;
+    public int pollJitterSeconds;
+    public boolean pollReleases;
+    public boolean pollSnapshots;
+    public boolean prestageUpdates;
+    public int crawlerParallelism;
+    public int downloadMaxAttempts;
+    public int downloadSegments;
+    public int downloadProgressIntervalSeconds;
+    public int artifactStoreMaxMB;
+    public int retainedCobblemonJars;
+    public int restartCountdownSeconds;
+    public int restartQuietPlayerCount;
+    public int restartQuietMspt;
+    public int restartMaxWaitMinutes;
+    public int healthReportIntervalMinutes;
+    public boolean metricsEnabled;
+    public String metricsBindAddress;
+    public int metricsPort;
+    public String logLevel;
+    public String logFile;
+    public int logQueueCapacity;
+    public String logOverflowPolicy;
+    public int logMaxFileSizeMB;
+    public int logMaxAgeHours;
+    public int logRetainedFiles;
 
     public Config()
     {
@@ -20,6 +61,47 @@ public class Config
         this.channelID = "";
         this.guildID = "";
         this.cobblemonUpdateURL = "https://maven.impactdev.net/repository/development/";
+        this.discordReadyTimeoutSeconds = 60;
+        this.discordLeanProfile = true;
+        this.discordCoalesceMillis = 1000;
+        this.discordDrainTimeoutSeconds = 5;
+        this.dmChannelCacheSize = 256;
+        this.dmChannelCacheMinutes = 60;
+        this.httpConnectTimeoutSeconds = 10;
+        this.httpRequestTimeoutSeconds = 30;
+        this.httpMaxRetries = 3;
+        this.httpReadIdleTimeoutSeconds = 30;
+        this.httpRetryBackoffMillis = 500;
+        this.httpCacheTtlSeconds = 300;
+        this.httpCacheMaxStaleMinutes = 1440;
+        this.lookupTimeoutSeconds = 10;
+        this.pollerEnabled = true;
+        this.pollIntervalSeconds = 300;
+        this.pollJitterSeconds = 30;
+        this.pollReleases = true;
+        this.pollSnapshots = false;
+        this.prestageUpdates = true;
+        this.crawlerParallelism = 4;
+        this.downloadMaxAttempts = 5;
+        this.downloadSegments = 1;
+        this.downloadProgressIntervalSeconds = 3;
+        this.artifactStoreMaxMB = 512;
+        this.retainedCobblemonJars = 3;
+        this.restartCountdownSeconds = 60;
+        this.restartQuietPlayerCount = 2;
+        this.restartQuietMspt = 40;
+        this.restartMaxWaitMinutes = 30;
+        this.healthReportIntervalMinutes = 0;
+        this.metricsEnabled = false;
+        this.metricsBindAddress = "127.0.0.1";
+        this.metricsPort = 9464;
+        this.logLevel = "INFO";
+        this.logFile = "config/CobblemonUpdater/application.log";
+        this.logQueueCapacity = 8192;
+        this.logOverflowPolicy = "BLOCK";
+        this.logMaxFileSizeMB = 10;
+        this.logMaxAgeHours = 24;
+        this.logRetainedFiles = 7;
     }
 
     public static void writeConfig()
@@ -49,15 +131,15 @@ public class Config
         dir.mkdirs();
         Gson gson  = Adapters.PRETTY_MAIN_GSON;
         File file = new File(dir, "config.json");
-        JsonReader reader = null;
-        try {
-            reader = new JsonReader(new FileReader(file));
+        try (JsonReader reader = new JsonReader(new BufferedReader(new FileReader(file)))) {
+            return gson.fromJson(reader, Config.class);
         } catch (FileNotFoundException e) {
             Logger.log("Something went wrong attempting to read the Config");
             return null;
+        } catch (IOException e) {
+            Logger.log(e);
+            return null;
         }
-
-        return gson.fromJson(reader, Config.class);
     }
 
     public void saveConfig() {